@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+/**
+ * Concurrency limit adjusted with additive increase / multiplicative decrease. The limit is cut by backoffRatio when a
+ * request is dropped by the target (timeout, 429, 5xx), once per congestion window: the drops of the requests sent
+ * before the last decrease, which come back within about one RTT of it, are part of the same congestion. It grows by
+ * one per limit requests while the limit is actually used and the latency stays within tolerance times the no-load
+ * latency. The no-load latency follows the lowest latencies seen, drifting up slowly so that a target that became
+ * slower for good is not held to its old latency.
+ */
+public class AimdConcurrencyLimit {
+
+    // weight of the latest sample in the smoothed RTT
+    private static final double RTT_SMOOTHING = 0.1;
+    // how fast the no-load RTT drifts towards higher samples
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+
+    private double limit;
+    private double smoothedRtt;
+    private double baselineRtt;
+    private long decreasedAt = Long.MIN_VALUE;
+
+    public AimdConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the smoothed RTT in milliseconds.
+     */
+    public synchronized double getRtt() {
+        return smoothedRtt;
+    }
+
+    /**
+     * @param rtt      the time the request took, in milliseconds
+     * @param inFlight the number of requests in flight when the request was sent
+     * @param dropped  whether the target dropped the request
+     * @param now      the time the request completed, in milliseconds
+     */
+    public synchronized void onSample(long rtt, int inFlight, boolean dropped, long now) {
+        if (dropped) {
+            // already backed off for this congestion
+            if (now - rtt >= decreasedAt) {
+                limit = Math.max(minLimit, Math.floor(limit * backoffRatio));
+                decreasedAt = now;
+            }
+            return;
+        }
+
+        smoothedRtt = smoothedRtt == 0 ? rtt : RTT_SMOOTHING * rtt + (1 - RTT_SMOOTHING) * smoothedRtt;
+        if (baselineRtt == 0 || rtt < baselineRtt) {
+            baselineRtt = rtt;
+        } else {
+            baselineRtt += BASELINE_DRIFT * (rtt - baselineRtt);
+        }
+
+        // no point in growing a limit that isn't reached
+        if (inFlight * 2 >= limit && smoothedRtt <= tolerance * baselineRtt) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+}
@@ -39,14 +39,21 @@ public class BasicAuthenticationProcessor implements Processor {
             return;
         }
 
-        Credentials credentials = new UsernamePasswordCredentials(this.username, password);
+        in.setHeader("Authorization", authorization(this.username, password));
+    }
+
+    /**
+     * @return the value of the Authorization header for the given credentials.
+     */
+    public static String authorization(String username, String password) throws AuthenticationException {
+        Credentials credentials = new UsernamePasswordCredentials(username, password);
 
         BasicScheme basicScheme = new BasicScheme();
         final HttpRequest request = new BasicHttpRequest("POST", "/");
 
         Header header = basicScheme.authenticate(credentials, request, new BasicHttpContext());
 
-        in.setHeader("Authorization", header.getValue());
+        return header.getValue();
     }
 
 }
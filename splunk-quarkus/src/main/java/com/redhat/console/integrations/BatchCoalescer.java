@@ -0,0 +1,49 @@
+package com.redhat.console.integrations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.AggregationStrategy;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+
+/**
+ * Coalesces the {@link EventBatch} of several messages going to the same target into a single batch. The original
+ * CloudEvents are kept in the {@link #COALESCED_EVENTS} exchange property, so that each of them still gets its own
+ * history record. As a predicate, it tells whether the coalesced batch reached its byte or event budget.
+ */
+public class BatchCoalescer implements AggregationStrategy, Predicate {
+
+    public static final String COALESCED_EVENTS = "coalescedEvents";
+
+    private final int maxBytes;
+    private final int maxEvents;
+
+    public BatchCoalescer(int maxBytes, int maxEvents) {
+        this.maxBytes = maxBytes;
+        this.maxEvents = maxEvents;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        CoalescedEvent coalescedEvent = CoalescedEvent.of(newExchange);
+
+        if (oldExchange == null) {
+            List<CoalescedEvent> coalescedEvents = new ArrayList<>();
+            coalescedEvents.add(coalescedEvent);
+            newExchange.setProperty(COALESCED_EVENTS, coalescedEvents);
+            return newExchange;
+        }
+
+        oldExchange.getIn().getBody(EventBatch.class).append(newExchange.getIn().getBody(EventBatch.class));
+        oldExchange.getProperty(COALESCED_EVENTS, List.class).add(coalescedEvent);
+        return oldExchange;
+    }
+
+    @Override
+    public boolean matches(Exchange exchange) {
+        EventBatch batch = exchange.getIn().getBody(EventBatch.class);
+        return batch != null && (batch.size() >= maxBytes || batch.getEventCount() >= maxEvents);
+    }
+}
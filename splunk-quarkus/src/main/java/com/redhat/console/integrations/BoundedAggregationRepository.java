@@ -0,0 +1,78 @@
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.MemoryAggregationRepository;
+
+/**
+ * In-memory aggregation repository which keeps track of the number of open aggregates and of the bytes they hold, so
+ * that new messages can be refused before the aggregates outgrow the memory of the pod. The size of an aggregate is
+ * the size of its {@link EventBatch} body.
+ */
+public class BoundedAggregationRepository extends MemoryAggregationRepository {
+
+    private final String name;
+    private final int maxAggregates;
+    private final long maxBytes;
+
+    private final Map<String, Integer> aggregateSizes = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public BoundedAggregationRepository(String name, int maxAggregates, long maxBytes) {
+        this.name = name;
+        this.maxAggregates = maxAggregates;
+        this.maxBytes = maxBytes;
+
+        Tags tags = Tags.of("repository", name);
+        Metrics.gauge("integrations.aggregation.open", tags, aggregateSizes, Map::size);
+        Metrics.gauge("integrations.aggregation.bytes", tags, bytes);
+    }
+
+    @Override
+    public Exchange add(CamelContext camelContext, String key, Exchange exchange) {
+        int size = sizeOf(exchange);
+        Integer previousSize = aggregateSizes.put(key, size);
+        bytes.addAndGet(previousSize == null ? size : size - previousSize);
+        return super.add(camelContext, key, exchange);
+    }
+
+    @Override
+    public void remove(CamelContext camelContext, String key, Exchange exchange) {
+        super.remove(camelContext, key, exchange);
+        Integer previousSize = aggregateSizes.remove(key);
+        if (previousSize != null) {
+            bytes.addAndGet(-previousSize);
+        }
+    }
+
+    /**
+     * Fails if no new aggregate should be opened, because either the maximum number of open aggregates or the maximum
+     * number of bytes held by them has been reached.
+     */
+    public void ensureCapacity() throws IOException {
+        if (aggregateSizes.size() >= maxAggregates || bytes.get() >= maxBytes) {
+            throw new DeliveryRejectedException("Too many " + name + " batches in progress (" + aggregateSizes.size()
+                    + " batches, " + bytes.get() + " bytes)");
+        }
+    }
+
+    public int getOpenAggregates() {
+        return aggregateSizes.size();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private static int sizeOf(Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+        return body instanceof EventBatch ? ((EventBatch) body).size() : 0;
+    }
+}
@@ -0,0 +1,11 @@
+package com.redhat.console.integrations;
+
+/**
+ * Thrown instead of delivering to a target whose circuit breaker is open.
+ */
+public class CircuitBreakerOpenException extends Exception {
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
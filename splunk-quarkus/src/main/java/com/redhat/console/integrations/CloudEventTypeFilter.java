@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.quarkus.logging.Log;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Predicate;
+
+/**
+ * Accepts only the Kafka records whose CloudEvent type is ours, without decoding the whole payload. Every integration
+ * reads the entire ingress topic, so most records belong to another integration and must be dropped as cheaply as
+ * possible.
+ *
+ * The type is taken from the "ce_type" Kafka record header when the producer sets it (CloudEvents Kafka binding).
+ * Otherwise the JSON body is streamed until the top-level "type" field is found, skipping over any other field
+ * without building it.
+ */
+public class CloudEventTypeFilter implements Predicate {
+
+    public static final String KAFKA_TYPE_HEADER = "ce_type";
+    public static final String TYPE_FIELD = "type";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String acceptedType;
+    private final Counter acceptedCounter;
+    private final Counter droppedCounter;
+
+    public CloudEventTypeFilter(String acceptedType) {
+        this.acceptedType = acceptedType;
+        this.acceptedCounter = Metrics.counter("integrations.ingress.records", "result", "accepted");
+        this.droppedCounter = Metrics.counter("integrations.ingress.records", "result", "dropped");
+    }
+
+    @Override
+    public boolean matches(Exchange exchange) {
+        Message in = exchange.getIn();
+
+        String type = readTypeHeader(in);
+        if (type == null) {
+            try {
+                type = readTypeField(in.getBody(String.class));
+            } catch (IOException e) {
+                Log.debugf(e, "Kafka message ignored because its CloudEvent type could not be read");
+            }
+        }
+
+        if (acceptedType.equals(type)) {
+            acceptedCounter.increment();
+            return true;
+        } else {
+            droppedCounter.increment();
+            return false;
+        }
+    }
+
+    private static String readTypeHeader(Message in) {
+        Object value = in.getHeader(KAFKA_TYPE_HEADER);
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        } else if (value != null) {
+            return value.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Streams the given CloudEvent and returns its top-level "type" field, or null if it has none. Nested objects and
+     * arrays (e.g. "data") are skipped and parsing stops as soon as the field is found.
+     */
+    static String readTypeField(String cloudEvent) throws IOException {
+        if (cloudEvent == null) {
+            return null;
+        }
+
+        try (JsonParser parser = JSON_FACTORY.createParser(cloudEvent)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken valueToken = parser.nextToken();
+                if (TYPE_FIELD.equals(fieldName)) {
+                    return valueToken == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+        }
+        return null;
+    }
+}
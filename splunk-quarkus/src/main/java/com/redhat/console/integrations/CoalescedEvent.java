@@ -0,0 +1,125 @@
+package com.redhat.console.integrations;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+
+/**
+ * What is left of an original CloudEvent once its Splunk events have been coalesced with the events of other messages
+ * into a single request. It holds what is needed to write the history record of that CloudEvent, or to deliver it
+ * again.
+ */
+public class CoalescedEvent {
+
+    private final String id;
+    private final String type;
+    private final Long timeIn;
+    private final Long recordTimestamp;
+    private final Object orgId;
+    private final Object accountId;
+    private final String record;
+    private final Object recordKey;
+    private final int attempt;
+    private final TargetSpool.SpooledRecord spooled;
+    private final KafkaOffsetWatermark.PendingOffset pendingOffset;
+
+    public CoalescedEvent(String id, String type, Long timeIn, Object orgId, Object accountId) {
+        this(id, type, timeIn, null, orgId, accountId, null, null, 0, null, null);
+    }
+
+    public CoalescedEvent(String id, String type, Long timeIn, Long recordTimestamp, Object orgId, Object accountId,
+            String record, Object recordKey, int attempt, TargetSpool.SpooledRecord spooled,
+            KafkaOffsetWatermark.PendingOffset pendingOffset) {
+        this.id = id;
+        this.type = type;
+        this.timeIn = timeIn;
+        this.recordTimestamp = recordTimestamp;
+        this.orgId = orgId;
+        this.accountId = accountId;
+        this.record = record;
+        this.recordKey = recordKey;
+        this.attempt = attempt;
+        this.spooled = spooled;
+        this.pendingOffset = pendingOffset;
+    }
+
+    public static CoalescedEvent of(Exchange exchange) {
+        Message in = exchange.getIn();
+        return new CoalescedEvent(
+                in.getHeader("ce-id", String.class),
+                in.getHeader("Ce-type", String.class),
+                exchange.getProperty("timeIn", Long.class),
+                exchange.getProperty(StageTimer.RECORD_TIMESTAMP, Long.class),
+                in.getHeader("orgId"),
+                in.getHeader("accountId"),
+                exchange.getProperty(DelayedRetry.RECORD, String.class),
+                exchange.getProperty(DelayedRetry.RECORD_KEY),
+                exchange.getProperty(DelayedRetry.ATTEMPT, 0, Integer.class),
+                exchange.getProperty(TargetSpool.SPOOLED, TargetSpool.SpooledRecord.class),
+                exchange.getProperty(KafkaOffsetWatermark.PENDING_OFFSET, KafkaOffsetWatermark.PendingOffset.class));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getTimeIn() {
+        return timeIn;
+    }
+
+    /**
+     * @return the timestamp of the Kafka record the CloudEvent was received with, see {@link StageTimer}.
+     */
+    public Long getRecordTimestamp() {
+        return recordTimestamp;
+    }
+
+    public Object getOrgId() {
+        return orgId;
+    }
+
+    public Object getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * @return the Kafka record the CloudEvent was received with, see {@link DelayedRetry}.
+     */
+    public String getRecord() {
+        return record;
+    }
+
+    /**
+     * @return the key of the Kafka record the CloudEvent was received with.
+     */
+    public Object getRecordKey() {
+        return recordKey;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * @return the spooled record of the CloudEvent when it is replayed, see {@link TargetSpool}.
+     */
+    public TargetSpool.SpooledRecord getSpooled() {
+        return spooled;
+    }
+
+    /**
+     * @return the Kafka record the CloudEvent was received with, as long as its offset is not committed, see
+     *         {@link KafkaOffsetWatermark}.
+     */
+    public KafkaOffsetWatermark.PendingOffset getPendingOffset() {
+        return pendingOffset;
+    }
+
+    @Override
+    public String toString() {
+        return id + " (orgId " + orgId + " account " + accountId + ")";
+    }
+}
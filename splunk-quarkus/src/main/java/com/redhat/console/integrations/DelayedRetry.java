@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.micrometer.core.instrument.Metrics;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Predicate;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.support.DefaultMessage;
+
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+
+/**
+ * Delivers again, later, the events whose delivery failed because the target was unavailable: I/O failure, timeout,
+ * 429 or 5xx, or open circuit breaker. Instead of waiting on a delivery thread, such an event is published back to a
+ * retry topic and the failure is only reported once all the attempts failed.
+ *
+ * The delays grow exponentially with the attempts, and every attempt has its own tier topic, named after the retry
+ * topic and suffixed with the attempt number. All the events of a tier wait for the same delay, so they become due in
+ * the order they were published and the consumer of a tier only ever waits for the event at its head, while the
+ * ingress topic keeps moving. The consumer of a tier waits on its own thread, so the delays must stay below the
+ * max.poll.interval.ms of the Kafka consumers, which is checked on creation.
+ *
+ * As a predicate, it tells whether a failed delivery is to be retried. The original Kafka record and its key are kept
+ * in the {@link #RECORD} and {@link #RECORD_KEY} exchange properties when the event is received, see
+ * {@link #keepRecord(Exchange)}. The records are published again with their key, so that the records of a key stay in
+ * order. A coalesced delivery is only retried while all its events have attempts left.
+ *
+ * A delivery deferred by this application (see {@link DeliveryDeferredException}) is retried as well, skipping the
+ * attempts whose delay is shorter than it has to wait.
+ */
+public class DelayedRetry implements Predicate {
+
+    public static final String RECORD = "kafkaRecord";
+    public static final String RECORD_KEY = "kafkaRecordKey";
+    public static final String ATTEMPT = "retryAttempt";
+    public static final String ATTEMPT_HEADER = "x-integrations-retry-attempt";
+    public static final String DUE_HEADER = "x-integrations-retry-due";
+
+    private final String retryTopic;
+    private final long[] delays;
+
+    /**
+     * @param maxPollInterval the max.poll.interval.ms of the Kafka consumers, which the delays must stay below
+     */
+    public DelayedRetry(String retryTopic, int maxAttempts, long initialDelay, double multiplier,
+            long maxPollInterval) {
+        this.retryTopic = retryTopic;
+        this.delays = new long[Math.max(0, maxAttempts)];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = (long) (initialDelay * Math.pow(multiplier, i));
+            if (delays[i] >= maxPollInterval) {
+                throw new IllegalArgumentException("The delay of retry attempt " + (i + 1) + " (" + delays[i]
+                                                   + " ms) must stay below the max.poll.interval.ms of the Kafka consumers ("
+                                                   + maxPollInterval + " ms)");
+            }
+        }
+    }
+
+    /**
+     * Keeps the Kafka record the event was received with and its key, so that it can be published again as is.
+     */
+    public static void keepRecord(Exchange exchange) {
+        exchange.setProperty(RECORD, exchange.getIn().getBody(String.class));
+        exchange.setProperty(RECORD_KEY, exchange.getIn().getHeader(KafkaConstants.KEY));
+    }
+
+    @Override
+    public boolean matches(Exchange exchange) {
+        Exception exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        if (!(exception instanceof CircuitBreakerOpenException || exception instanceof DeliveryDeferredException
+              || TargetCircuitBreaker.isUnavailable(exception))) {
+            return false;
+        }
+
+        List<Retry> retries = retries(exchange);
+        if (retries.isEmpty()) {
+            return false;
+        }
+        long minDelay = minDelay(exchange);
+        for (Retry retry : retries) {
+            if (retry.record == null || nextAttempt(retry.attempt, minDelay) >= delays.length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Turns the exchange into the records to publish to the tier topics of their next attempt.
+     */
+    public void schedule(Exchange exchange) {
+        long now = System.currentTimeMillis();
+        long minDelay = minDelay(exchange);
+        List<Message> records = new ArrayList<>();
+        for (Retry retry : retries(exchange)) {
+            int attempt = nextAttempt(retry.attempt, minDelay);
+            // the splitter sends each of these messages as is
+            Message record = new DefaultMessage(exchange);
+            record.setHeader(KafkaConstants.OVERRIDE_TOPIC, tierTopic(attempt + 1));
+            record.setHeader(ATTEMPT_HEADER, Integer.toString(attempt + 1));
+            record.setHeader(DUE_HEADER, Long.toString(now + delays[attempt]));
+            if (retry.key != null) {
+                record.setHeader(KafkaConstants.KEY, retry.key);
+            }
+            record.setBody(retry.record);
+            records.add(record);
+
+            Metrics.counter("integrations.retry.scheduled", "attempt", Integer.toString(attempt + 1)).increment();
+        }
+        exchange.getIn().setBody(records);
+    }
+
+    /**
+     * Waits until the record received from a tier topic is due, and gets it ready to be delivered again. Only its key
+     * is left of its headers.
+     */
+    public static void awaitDue(Exchange exchange) throws InterruptedException {
+        Message in = exchange.getIn();
+        long delay = Long.parseLong(readHeader(in, DUE_HEADER)) - System.currentTimeMillis();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+
+        exchange.setProperty(ATTEMPT, Integer.parseInt(readHeader(in, ATTEMPT_HEADER)));
+        in.removeHeaders("*", KafkaConstants.KEY);
+    }
+
+    /**
+     * @return the tier topic of the given attempt, starting at 1.
+     */
+    public String tierTopic(int attempt) {
+        return retryTopic + "." + attempt;
+    }
+
+    public int getMaxAttempts() {
+        return delays.length;
+    }
+
+    long getDelay(int attempt) {
+        return delays[attempt - 1];
+    }
+
+    /**
+     * @return the index of the first attempt from the given one on whose delay is at least minDelay, or the number of
+     *         attempts if there is none.
+     */
+    private int nextAttempt(int attempt, long minDelay) {
+        while (attempt < delays.length && delays[attempt] < minDelay) {
+            attempt++;
+        }
+        return attempt;
+    }
+
+    private static long minDelay(Exchange exchange) {
+        Exception exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        return exception instanceof DeliveryDeferredException ? ((DeliveryDeferredException) exception).getDelay() : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Retry> retries(Exchange exchange) {
+        List<Retry> retries = new ArrayList<>();
+        List<CoalescedEvent> coalescedEvents = exchange.getProperty(COALESCED_EVENTS, List.class);
+        if (coalescedEvents != null) {
+            for (CoalescedEvent coalescedEvent : coalescedEvents) {
+                retries.add(new Retry(coalescedEvent.getRecord(), coalescedEvent.getRecordKey(),
+                        coalescedEvent.getAttempt()));
+            }
+        } else {
+            retries.add(new Retry(exchange.getProperty(RECORD, String.class), exchange.getProperty(RECORD_KEY),
+                    exchange.getProperty(ATTEMPT, 0, Integer.class)));
+        }
+        return retries;
+    }
+
+    private static String readHeader(Message in, String name) {
+        Object value = in.getHeader(name);
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return value == null ? null : value.toString();
+    }
+
+    private static class Retry {
+        final String record;
+        final Object key;
+        final int attempt;
+
+        Retry(String record, Object key, int attempt) {
+            this.record = record;
+            this.key = key;
+            this.attempt = attempt;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.redhat.console.integrations;
+
+/**
+ * Thrown when a delivery cannot be sent for now without reaching its target, e.g. the target asked to wait longer
+ * than a delivery can. Unlike the other rejections, the delivery is retried or spooled, not before the given delay.
+ */
+public class DeliveryDeferredException extends DeliveryRejectedException {
+
+    private final long delay;
+
+    public DeliveryDeferredException(String message, long delay) {
+        super(message);
+        this.delay = delay;
+    }
+
+    /**
+     * @return the time in milliseconds to wait at least before delivering again.
+     */
+    public long getDelay() {
+        return delay;
+    }
+}
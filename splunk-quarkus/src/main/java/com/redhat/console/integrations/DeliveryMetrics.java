@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.http.base.HttpOperationFailedException;
+
+/**
+ * Delivery metrics tagged by integration and target: the outcomes of the deliveries by class, with the status family of
+ * the HTTP failures, the latency of the deliveries from the handler on, and the bytes and events sent per request.
+ *
+ * The target is identified by its host, but only the busiest hosts get their own series to keep the cardinality
+ * bounded, all the other hosts being tagged as {@link #OTHER_TARGET}. The requests are counted per host, up to a
+ * bounded number of hosts, and the busiest hosts are ranked again every {@link #RANKING_PERIOD} milliseconds, the
+ * counts being halved each time so that the ranking follows the traffic. The series of the hosts that are no longer
+ * among the busiest ones are removed.
+ */
+public class DeliveryMetrics {
+
+    public static final String REQUEST_EVENTS = "requestEvents";
+    public static final String OTHER_TARGET = "other";
+    public static final String UNKNOWN_TARGET = "unknown";
+    public static final String NO_STATUS = "none";
+
+    static final long RANKING_PERIOD = 60000;
+
+    private final String integration;
+    private final int topTargets;
+    private final int trackedTargets;
+
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private final Map<String, Set<Meter>> meters = new ConcurrentHashMap<>();
+    private volatile Set<String> busiestTargets = Set.of();
+    private volatile long rankedAt = System.nanoTime();
+
+    public DeliveryMetrics(String integration, int topTargets) {
+        this.integration = integration;
+        this.topTargets = topTargets;
+        this.trackedTargets = Math.max(100, topTargets * 10);
+    }
+
+    /**
+     * @return a processor recording the outcome of the delivery, under the given class.
+     */
+    public Processor outcome(String outcome) {
+        return exchange -> recordOutcome(exchange, outcome);
+    }
+
+    /**
+     * Records a request sent to the target, with its body and its number of events, from the {@link #REQUEST_EVENTS}
+     * exchange property, one by default.
+     */
+    public void request(Exchange exchange) {
+        String target = target(exchange);
+        Tags tags = Tags.of("integration", integration, "target", target);
+
+        register(target, DistributionSummary.builder("integrations.delivery.request.bytes")
+                .baseUnit("bytes")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry))
+                .record(bodySize(exchange.getIn().getBody()));
+        register(target, DistributionSummary.builder("integrations.delivery.request.events")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry))
+                .record(exchange.getProperty(REQUEST_EVENTS, 1, Integer.class));
+    }
+
+    /**
+     * Registers a gauge of the given host, tagged by integration and target, if the host is among the busiest ones. The
+     * gauge is removed along with the other series of the host, the callers register it again on their next use.
+     */
+    public void gauge(String name, String host, Supplier<Number> value) {
+        if (busiestTargets.contains(host)) {
+            register(host, Gauge.builder(name, value)
+                    .tags("integration", integration, "target", host)
+                    .register(Metrics.globalRegistry));
+        }
+    }
+
+    void recordOutcome(Exchange exchange, String outcome) {
+        String target = target(exchange);
+        Exception exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        String status = exception instanceof HttpOperationFailedException
+                ? ((HttpOperationFailedException) exception).getStatusCode() / 100 + "xx"
+                : NO_STATUS;
+        Tags tags = Tags.of("integration", integration, "target", target, "outcome", outcome, "status", status);
+
+        register(target, Metrics.counter("integrations.delivery.outcomes", tags)).increment();
+        Long timeIn = exchange.getProperty(StageTimer.TIME_IN, Long.class);
+        if (timeIn != null) {
+            register(target, Timer.builder("integrations.delivery.latency")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(Metrics.globalRegistry))
+                    .record(Math.max(0, System.currentTimeMillis() - timeIn), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the host of the target of the exchange if it is among the busiest ones, or else {@link #OTHER_TARGET}.
+     */
+    String target(Exchange exchange) {
+        return tag(host(exchange.getProperty("targetUrl", String.class)));
+    }
+
+    String tag(String host) {
+        if (UNKNOWN_TARGET.equals(host)) {
+            return host;
+        }
+
+        AtomicLong count = requestCounts.get(host);
+        if (count == null && requestCounts.size() < trackedTargets) {
+            count = requestCounts.computeIfAbsent(host, key -> new AtomicLong());
+        }
+        if (count != null) {
+            count.incrementAndGet();
+        }
+
+        if (System.nanoTime() - rankedAt > TimeUnit.MILLISECONDS.toNanos(RANKING_PERIOD)) {
+            rank();
+        } else if (count != null && busiestTargets.size() < topTargets && !busiestTargets.contains(host)) {
+            admit(host);
+        }
+        return busiestTargets.contains(host) ? host : OTHER_TARGET;
+    }
+
+    private synchronized void admit(String host) {
+        if (busiestTargets.size() < topTargets) {
+            Set<String> targets = new HashSet<>(busiestTargets);
+            targets.add(host);
+            busiestTargets = Set.copyOf(targets);
+        }
+    }
+
+    private synchronized void rank() {
+        if (System.nanoTime() - rankedAt <= TimeUnit.MILLISECONDS.toNanos(RANKING_PERIOD)) {
+            return;
+        }
+        rankedAt = System.nanoTime();
+
+        List<Map.Entry<String, AtomicLong>> counts = new ArrayList<>(requestCounts.entrySet());
+        counts.sort((a, b) -> Long.compare(b.getValue().get(), a.getValue().get()));
+        Set<String> targets = new HashSet<>();
+        for (int i = 0; i < Math.min(topTargets, counts.size()); i++) {
+            targets.add(counts.get(i).getKey());
+        }
+
+        // the counts decay so that the ranking follows the traffic
+        for (Map.Entry<String, AtomicLong> count : counts) {
+            if (count.getValue().updateAndGet(value -> value / 2) == 0) {
+                requestCounts.remove(count.getKey());
+            }
+        }
+
+        for (String target : busiestTargets) {
+            if (!targets.contains(target)) {
+                Set<Meter> removed = meters.remove(target);
+                if (removed != null) {
+                    removed.forEach(Metrics.globalRegistry::remove);
+                }
+            }
+        }
+        busiestTargets = Set.copyOf(targets);
+    }
+
+    private <T extends Meter> T register(String target, T meter) {
+        if (!OTHER_TARGET.equals(target) && !UNKNOWN_TARGET.equals(target)) {
+            meters.computeIfAbsent(target, key -> ConcurrentHashMap.newKeySet()).add(meter);
+        }
+        return meter;
+    }
+
+    static String host(String url) {
+        if (url == null) {
+            return UNKNOWN_TARGET;
+        }
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? UNKNOWN_TARGET : host;
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN_TARGET;
+        }
+    }
+
+    private static long bodySize(Object body) {
+        if (body instanceof byte[]) {
+            return ((byte[]) body).length;
+        } else if (body instanceof String) {
+            return ((String) body).getBytes(StandardCharsets.UTF_8).length;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,16 @@
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a delivery is rejected by this application before reaching its target, e.g. too many deliveries in
+ * flight or waiting for the target. The delivery fails as an I/O failure, but says nothing about the availability of
+ * the target: it neither opens the circuit breaker nor gets retried or spooled, unless it is a
+ * {@link DeliveryDeferredException}.
+ */
+public class DeliveryRejectedException extends IOException {
+
+    public DeliveryRejectedException(String message) {
+        super(message);
+    }
+}
@@ -20,6 +20,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.PredicateBuilder;
 
 import static com.redhat.console.integrations.OutgoingCloudEventBuilder.OUTCOME_EXCHANGE_PROPERTY;
 import static com.redhat.console.integrations.OutgoingCloudEventBuilder.SUCCESSFUL_EXCHANGE_PROPERTY;
@@ -34,14 +35,84 @@ public class ErrorHandlingRoutes extends IntegrationsRouteBuilder {
     @Inject
     OutgoingCloudEventBuilder outgoingCloudEventBuilder;
 
+    private final DelayedRetry delayedRetry = newDelayedRetry();
+
+    private final DeliveryMetrics deliveryMetrics = getDeliveryMetrics();
+
+    private TargetSpool targetSpool;
+
     @Override
     public void configure() throws Exception {
         super.configure();
+        targetSpool = getTargetSpool();
 
         configureIoFailed();
         configureHttpFailed();
         configureTargetUrlValidationFailed();
         configureSecureConnectionFailed();
+        configureDeliveryFailed();
+        configureCircuitOpen();
+        configureDeliveryError();
+    }
+
+    private void configureDeliveryError() {
+        // The error handler of the unexpected failures, whatever the stage of the delivery
+        from(direct("deliveryError"))
+                .routeId("deliveryError")
+                .log(LoggingLevel.ERROR, "Unexpected failure for event ${header.ce-id} (orgId ${header.orgId}"
+                                         + " account ${header.accountId}) to ${exchangeProperty.targetUrl}: ${exception}")
+                .log(LoggingLevel.DEBUG, "${exception.stacktrace}")
+                .process(deliveryMetrics.outcome("deliveryError"))
+                .choice()
+                // the history record is written for a delivery that reached the handler, unless it is what failed
+                .when(PredicateBuilder.and(exchangeProperty(StageTimer.TIME_IN).isNotNull(),
+                        exchangeProperty(SUCCESSFUL_EXCHANGE_PROPERTY).isNull()))
+                .setProperty(OUTCOME_EXCHANGE_PROPERTY, simple("${exception.message}"))
+                .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(false))
+                .process(outgoingCloudEventBuilder)
+                .to(direct("return"))
+                .otherwise()
+                // or else the Kafka record is released right away
+                .process(KafkaOffsetWatermark::release)
+                .end();
+    }
+
+    private void configureCircuitOpen() {
+        // The error handler when the delivery was skipped because the circuit breaker of the target is open
+        from(direct("circuitOpen"))
+                .routeId("circuitOpen")
+                // the delivery of the event is retried later if the target may be back by then
+                .filter(delayedRetry)
+                .to(direct("retry"))
+                .stop()
+                .end()
+                // or else kept in the spool until the target is back
+                .filter(targetSpool::keep)
+                .log(LoggingLevel.WARN, "Spooled event ${header.ce-id} (orgId ${header.orgId} account ${header.accountId})"
+                                        + " until ${exchangeProperty.targetUrl} is back: ${exception.message}")
+                .process(KafkaOffsetWatermark::release)
+                .stop()
+                .end()
+                .log(LoggingLevel.WARN, "Circuit breaker open for event ${header.ce-id} (orgId ${header.orgId}"
+                                        + " account ${header.accountId}) to ${exchangeProperty.targetUrl}: ${exception.message}")
+                .setProperty(OUTCOME_EXCHANGE_PROPERTY, simple("${exception.message}"))
+                .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(false))
+                .process(deliveryMetrics.outcome("circuitOpen"))
+                .process(outgoingCloudEventBuilder)
+                .to(direct("return"));
+    }
+
+    private void configureDeliveryFailed() {
+        // The error handler when a delivery failed without an exception, the outcome is set by the caller
+        from(direct("deliveryFailed"))
+                .routeId("deliveryFailed")
+                .log(LoggingLevel.ERROR, "Delivery failed for event ${header.ce-id} (orgId ${header.orgId}"
+                                         + " account ${header.accountId}) to ${exchangeProperty.targetUrl}:"
+                                         + " ${exchangeProperty." + OUTCOME_EXCHANGE_PROPERTY + "}")
+                .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(false))
+                .process(deliveryMetrics.outcome("deliveryFailed"))
+                .process(outgoingCloudEventBuilder)
+                .to(direct("return"));
     }
 
     private void configureSecureConnectionFailed() {
@@ -53,6 +124,7 @@ public class ErrorHandlingRoutes extends IntegrationsRouteBuilder {
                 .log(LoggingLevel.DEBUG, "${exception.stacktrace}")
                 .setProperty(OUTCOME_EXCHANGE_PROPERTY, simple("${exception.message}"))
                 .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(false))
+                .process(deliveryMetrics.outcome("secureConnectionFailed"))
                 .process(outgoingCloudEventBuilder)
                 .to(direct("return"));
     }
@@ -66,6 +138,7 @@ public class ErrorHandlingRoutes extends IntegrationsRouteBuilder {
                 .log(LoggingLevel.DEBUG, "${exception.stacktrace}")
                 .setProperty(OUTCOME_EXCHANGE_PROPERTY, simple("${exception.message}"))
                 .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(false))
+                .process(deliveryMetrics.outcome("targetUrlValidationFailed"))
                 .process(outgoingCloudEventBuilder)
                 .to(direct("return"));
     }
@@ -74,11 +147,24 @@ public class ErrorHandlingRoutes extends IntegrationsRouteBuilder {
         // The error handler found an IO Exception. We set the outcome to fail and then send to kafka
         from(direct("ioFailed"))
                 .routeId("ioFailed")
+                // the delivery of the event is retried later if the target may be back by then
+                .filter(delayedRetry)
+                .to(direct("retry"))
+                .stop()
+                .end()
+                // or else kept in the spool until the target is back
+                .filter(targetSpool::keep)
+                .log(LoggingLevel.WARN, "Spooled event ${header.ce-id} (orgId ${header.orgId} account ${header.accountId})"
+                                        + " until ${exchangeProperty.targetUrl} is back: ${exception.message}")
+                .process(KafkaOffsetWatermark::release)
+                .stop()
+                .end()
                 .log(LoggingLevel.ERROR, "IOFailure for event ${header.ce-id} (orgId ${header.orgId}"
                                          + " account ${header.accountId}) to ${exchangeProperty.targetUrl}: ${exception.message}")
                 .log(LoggingLevel.DEBUG, "${exception.stacktrace}")
                 .setProperty(OUTCOME_EXCHANGE_PROPERTY, simple("${exception.message}"))
                 .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(false))
+                .process(deliveryMetrics.outcome("ioFailed"))
                 .process(outgoingCloudEventBuilder)
                 .to(direct("return"));
     }
@@ -87,6 +173,18 @@ public class ErrorHandlingRoutes extends IntegrationsRouteBuilder {
         // The error handler found an HTTP Exception. We set the outcome to fail and then send to kafka
         from(direct("httpFailed"))
                 .routeId("httpFailed")
+                // the delivery of the event is retried later if the target may be back by then
+                .filter(delayedRetry)
+                .to(direct("retry"))
+                .stop()
+                .end()
+                // or else kept in the spool until the target is back
+                .filter(targetSpool::keep)
+                .log(LoggingLevel.WARN, "Spooled event ${header.ce-id} (orgId ${header.orgId} account ${header.accountId})"
+                                        + " until ${exchangeProperty.targetUrl} is back: ${exception.message}")
+                .process(KafkaOffsetWatermark::release)
+                .stop()
+                .end()
                 .log(LoggingLevel.ERROR, "HTTPFailure for event ${header.ce-id} (orgId ${header.orgId} account"
                                          + " ${header.accountId}) to ${exchangeProperty.targetUrl}: ${exception.getStatusCode()}"
                                          + " ${exception.getStatusText()}: ${exception.message}")
@@ -94,6 +192,7 @@ public class ErrorHandlingRoutes extends IntegrationsRouteBuilder {
                 .log(LoggingLevel.DEBUG, "Response Headers: ${exception.getResponseHeaders()}")
                 .setProperty(OUTCOME_EXCHANGE_PROPERTY, simple("${exception.message}"))
                 .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(false))
+                .process(deliveryMetrics.outcome("httpFailed"))
                 .process(outgoingCloudEventBuilder)
                 .to(direct("return"));
     }
@@ -3,16 +3,23 @@ package com.redhat.console.integrations;
 import org.apache.camel.AggregationStrategy;
 import org.apache.camel.Exchange;
 
+/**
+ * Appends the body of every aggregated exchange to an {@link EventBatch}. The batch is turned into the outgoing byte
+ * array only once, when it is sent.
+ */
 public class EventAppender implements AggregationStrategy {
 
     public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        String newBody = newExchange.getIn().getBody(String.class);
+
         if (oldExchange == null) {
+            EventBatch batch = new EventBatch();
+            batch.append(newBody);
+            newExchange.getIn().setBody(batch);
             return newExchange;
         }
 
-        String oldBody = oldExchange.getIn().getBody(String.class);
-        String newBody = newExchange.getIn().getBody(String.class);
-        oldExchange.getIn().setBody(oldBody + newBody);
+        oldExchange.getIn().getBody(EventBatch.class).append(newBody);
         return oldExchange;
     }
 }
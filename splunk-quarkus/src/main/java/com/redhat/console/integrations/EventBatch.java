@@ -0,0 +1,128 @@
+package com.redhat.console.integrations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Growable byte buffer the aggregated events are appended to. Each event is encoded once when it is appended, and the
+ * HTTP entity is only materialized once with {@link #toByteArray()} when the batch is sent. The end of every event is
+ * recorded, so that the batch can be split at event boundaries.
+ */
+public class EventBatch {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_EVENTS_CAPACITY = 16;
+
+    private byte[] buffer;
+    private int size;
+    private int[] eventEnds;
+    private int eventCount;
+
+    public EventBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public EventBatch(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 16)];
+        this.eventEnds = new int[INITIAL_EVENTS_CAPACITY];
+    }
+
+    private EventBatch(byte[] buffer, int[] eventEnds) {
+        this.buffer = buffer;
+        this.size = buffer.length;
+        this.eventEnds = eventEnds;
+        this.eventCount = eventEnds.length;
+    }
+
+    public void append(String event) {
+        append(event.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void append(byte[] event) {
+        ensureCapacity(size + event.length, eventCount + 1);
+        System.arraycopy(event, 0, buffer, size, event.length);
+        size += event.length;
+        eventEnds[eventCount++] = size;
+    }
+
+    /**
+     * Appends all the events of another batch to this one.
+     */
+    public void append(EventBatch other) {
+        ensureCapacity(size + other.size, eventCount + other.eventCount);
+        System.arraycopy(other.buffer, 0, buffer, size, other.size);
+        for (int i = 0; i < other.eventCount; i++) {
+            eventEnds[eventCount + i] = size + other.eventEnds[i];
+        }
+        size += other.size;
+        eventCount += other.eventCount;
+    }
+
+    /**
+     * @return the number of bytes appended so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public byte[] toByteArray() {
+        return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Splits this batch at event boundaries into batches of at most maxBytes bytes and maxEvents events. An event that
+     * is larger than maxBytes on its own gets a batch of its own. The batch itself is returned when it is within the
+     * limits.
+     */
+    public List<EventBatch> split(int maxBytes, int maxEvents) {
+        if (size <= maxBytes && eventCount <= maxEvents) {
+            return Collections.singletonList(this);
+        }
+
+        List<EventBatch> chunks = new ArrayList<>();
+        int chunkFirstEvent = 0;
+        int chunkStart = 0;
+        for (int i = 0; i < eventCount; i++) {
+            int chunkEvents = i - chunkFirstEvent;
+            if (chunkEvents > 0 && (eventEnds[i] - chunkStart > maxBytes || chunkEvents >= maxEvents)) {
+                chunks.add(slice(chunkFirstEvent, i));
+                chunkFirstEvent = i;
+                chunkStart = eventEnds[i - 1];
+            }
+        }
+        if (eventCount > chunkFirstEvent) {
+            chunks.add(slice(chunkFirstEvent, eventCount));
+        }
+        return chunks;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private EventBatch slice(int fromEvent, int toEvent) {
+        int from = fromEvent == 0 ? 0 : eventEnds[fromEvent - 1];
+        int[] sliceEventEnds = new int[toEvent - fromEvent];
+        for (int i = 0; i < sliceEventEnds.length; i++) {
+            sliceEventEnds[i] = eventEnds[fromEvent + i] - from;
+        }
+        return new EventBatch(Arrays.copyOfRange(buffer, from, eventEnds[toEvent - 1]), sliceEventEnds);
+    }
+
+    private void ensureCapacity(int minCapacity, int minEventsCapacity) {
+        if (minCapacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(minCapacity, buffer.length << 1));
+        }
+        if (minEventsCapacity > eventEnds.length) {
+            eventEnds = Arrays.copyOf(eventEnds, Math.max(minEventsCapacity, eventEnds.length << 1));
+        }
+    }
+}
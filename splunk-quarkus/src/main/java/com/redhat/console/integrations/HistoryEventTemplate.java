@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+/**
+ * Writes the history CloudEvents straight into a buffer, from a template whose constant part, the envelope up to the
+ * event id, is serialized once. Only the variable fields are escaped and appended, without building the intermediate
+ * JSON objects. The data of the event is itself a JSON document serialized as a string, so its fields are escaped
+ * twice.
+ *
+ * The durations of the stages of the delivery, see {@link StageTimer}, are optionally added to the data.
+ *
+ * Every thread reuses its own buffer, unless a record made it grow beyond {@link #MAX_RETAINED_CAPACITY}.
+ */
+public class HistoryEventTemplate {
+
+    static final int MAX_RETAINED_CAPACITY = 16384;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String envelope;
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    public HistoryEventTemplate(String type, String specVersion, String source) {
+        StringBuilder envelope = new StringBuilder();
+        envelope.append("{\"type\":");
+        appendString(envelope, type, false);
+        envelope.append(",\"specversion\":");
+        appendString(envelope, specVersion, false);
+        envelope.append(",\"source\":");
+        appendString(envelope, source, false);
+        envelope.append(",\"id\":");
+        this.envelope = envelope.toString();
+    }
+
+    /**
+     * @param stages the durations of the stages in milliseconds, by {@link StageTimer} stage, -1 for the ones that were
+     *        not timed, or null to leave them out along with the end-to-end latency.
+     */
+    public String write(String id, String time, Boolean successful, long duration, String target, String type,
+            String outcome, long[] stages, long endToEnd) {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+
+        buffer.append(envelope);
+        appendString(buffer, id, false);
+        buffer.append(",\"time\":");
+        appendString(buffer, time, false);
+        buffer.append(",\"data\":\"{\\\"successful\\\":").append(successful);
+        buffer.append(",\\\"duration\\\":").append(duration);
+        buffer.append(",\\\"details\\\":{\\\"target\\\":");
+        appendString(buffer, target, true);
+        buffer.append(",\\\"type\\\":");
+        appendString(buffer, type, true);
+        buffer.append(",\\\"outcome\\\":");
+        appendString(buffer, outcome, true);
+        buffer.append('}');
+        if (stages != null) {
+            buffer.append(",\\\"stages\\\":{");
+            boolean first = true;
+            for (int stage = 0; stage < stages.length; stage++) {
+                if (stages[stage] >= 0) {
+                    first = appendDuration(buffer, StageTimer.STAGE_NAMES[stage], stages[stage], first);
+                }
+            }
+            if (endToEnd >= 0) {
+                appendDuration(buffer, "endToEnd", endToEnd, first);
+            }
+            buffer.append('}');
+        }
+        buffer.append("}\"}");
+
+        String event = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffers.remove();
+        }
+        return event;
+    }
+
+    private static boolean appendDuration(StringBuilder buffer, String name, long duration, boolean first) {
+        if (!first) {
+            buffer.append(',');
+        }
+        buffer.append("\\\"").append(name).append("\\\":").append(duration);
+        return false;
+    }
+
+    /**
+     * Appends the value as a JSON string, or null, escaped twice when it goes into a serialized JSON document.
+     */
+    private static void appendString(StringBuilder buffer, String value, boolean twice) {
+        if (value == null) {
+            buffer.append("null");
+            return;
+        }
+        String quote = twice ? "\\\"" : "\"";
+        buffer.append(quote);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                // \" and \\ once escaped again become \\\" and \\\\
+                buffer.append(twice ? "\\\\\\" : "\\").append(c);
+            } else if (c < 0x20) {
+                buffer.append(twice ? "\\\\u00" : "\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                buffer.append(c);
+            }
+        }
+        buffer.append(quote);
+    }
+}
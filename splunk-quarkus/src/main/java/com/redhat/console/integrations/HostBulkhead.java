@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.camel.support.SynchronizationAdapter;
+
+/**
+ * Isolates the target hosts from each other: only a limited number of deliveries to a host are in flight at a time.
+ * The next ones wait in a queue of that host without holding a thread, and carry on from the resume executor once a
+ * delivery to the host is done. A delivery that finds the queue of its host full fails with a
+ * {@link DeliveryDeferredException}, so that it is retried or spooled rather than waiting any longer. So a slow host
+ * can only take its share of the delivery threads, and the others keep serving the other hosts.
+ *
+ * The limit of each host starts at initialLimit, and adapts between minLimit and maxLimit to what the host can take
+ * (see {@link AimdConcurrencyLimit}): it grows while the latency is stable and is cut when the host drops deliveries.
+ * The latency of a delivery leaves out the time it waited for the rate limit of its target, see
+ * {@link TargetRateLimiter}.
+ * With equal bounds, the limit is static.
+ *
+ * The in-flight and queued deliveries, the limit and the smoothed RTT are exported per host. The hosts without
+ * deliveries for idleExpiry milliseconds are dropped, along with their gauges.
+ */
+public class HostBulkhead extends AsyncProcessorSupport {
+
+    // the decrease of the limit when a delivery is dropped, and the increase of the latency which stops its growth
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double RTT_TOLERANCE = 1.5;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long idleExpiry;
+    private final Executor resumeExecutor;
+
+    private final Map<String, Compartment> compartments = new ConcurrentHashMap<>();
+    private volatile long expiredAt = System.currentTimeMillis();
+
+    /**
+     * @param initialLimit the initial number of deliveries in flight per host, 0 disables the bulkhead
+     */
+    public HostBulkhead(int initialLimit, int minLimit, int maxLimit, int maxQueued, long idleExpiry,
+            Executor resumeExecutor) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.idleExpiry = idleExpiry;
+        this.resumeExecutor = resumeExecutor;
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        if (initialLimit <= 0) {
+            callback.done(true);
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        expireIdleCompartments(now);
+
+        String host = getHost(exchange.getProperty("targetUrl", String.class));
+        Compartment compartment;
+        while (true) {
+            compartment = compartments.computeIfAbsent(host, this::newCompartment);
+            synchronized (compartment) {
+                // dropped in the meantime, its replacement is used instead
+                if (compartment.expired) {
+                    continue;
+                }
+                compartment.usedAt = now;
+                if (compartment.inFlight >= compartment.limit.getLimit()) {
+                    if (compartment.queue.size() >= maxQueued) {
+                        exchange.setException(
+                                new DeliveryDeferredException("Too many deliveries waiting for " + host, 0));
+                        callback.done(true);
+                        return true;
+                    }
+                    // the thread is given back, the delivery carries on once its turn comes
+                    compartment.queue.add(new Waiting(exchange, callback));
+                    return false;
+                }
+                compartment.inFlight++;
+                break;
+            }
+        }
+
+        releaseOnCompletion(exchange, compartment, compartment.inFlight);
+        callback.done(true);
+        return true;
+    }
+
+    int getInFlight(String host) {
+        Compartment compartment = compartments.get(host);
+        return compartment == null ? 0 : compartment.inFlight;
+    }
+
+    int getLimit(String host) {
+        Compartment compartment = compartments.get(host);
+        return compartment == null ? initialLimit : compartment.limit.getLimit();
+    }
+
+    int getQueued(String host) {
+        Compartment compartment = compartments.get(host);
+        return compartment == null ? 0 : compartment.queue.size();
+    }
+
+    int getHostCount() {
+        return compartments.size();
+    }
+
+    static String getHost(String targetUrl) {
+        try {
+            String host = URI.create(targetUrl).getHost();
+            return host == null ? targetUrl : host;
+        } catch (IllegalArgumentException e) {
+            return targetUrl;
+        }
+    }
+
+    private void releaseOnCompletion(Exchange exchange, Compartment compartment, int inFlight) {
+        long start = System.currentTimeMillis();
+        long deferredBefore = exchange.getProperty(TargetRateLimiter.DEFERRED_TIME, 0L, Long.class);
+        exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange exchange) {
+                Exception exception = exchange.getException() != null
+                        ? exchange.getException()
+                        : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+                // the deliveries rejected before reaching the host say nothing about its latency
+                if (!(exception instanceof DeliveryRejectedException)) {
+                    long now = System.currentTimeMillis();
+                    // the time spent waiting for the rate limit of the target is not latency of the host
+                    long deferred = exchange.getProperty(TargetRateLimiter.DEFERRED_TIME, 0L, Long.class)
+                                    - deferredBefore;
+                    compartment.limit.onSample(Math.max(0, now - start - deferred), inFlight,
+                            TargetCircuitBreaker.isUnavailable(exception), now);
+                }
+                release(compartment);
+            }
+        });
+    }
+
+    private void release(Compartment compartment) {
+        List<Waiting> admitted = new ArrayList<>();
+        int inFlight;
+        synchronized (compartment) {
+            compartment.inFlight--;
+            // the limit may have changed in the meantime
+            while (compartment.inFlight < compartment.limit.getLimit() && !compartment.queue.isEmpty()) {
+                admitted.add(compartment.queue.poll());
+                compartment.inFlight++;
+            }
+            inFlight = compartment.inFlight;
+        }
+
+        for (Waiting next : admitted) {
+            releaseOnCompletion(next.exchange, compartment, inFlight);
+            resumeExecutor.execute(() -> next.callback.done(false));
+        }
+    }
+
+    private void expireIdleCompartments(long now) {
+        // at most once per idle expiry
+        if (now - expiredAt < idleExpiry) {
+            return;
+        }
+        expiredAt = now;
+        compartments.entrySet().removeIf(entry -> {
+            Compartment compartment = entry.getValue();
+            synchronized (compartment) {
+                if (compartment.inFlight > 0 || !compartment.queue.isEmpty() || now - compartment.usedAt < idleExpiry) {
+                    return false;
+                }
+                compartment.expired = true;
+            }
+            compartment.gauges.forEach(Metrics.globalRegistry::remove);
+            return true;
+        });
+    }
+
+    private Compartment newCompartment(String host) {
+        Compartment compartment = new Compartment(
+                new AimdConcurrencyLimit(initialLimit, minLimit, maxLimit, BACKOFF_RATIO, RTT_TOLERANCE));
+        Tags tags = Tags.of("host", host);
+        compartment.gauges.add(Gauge.builder("integrations.bulkhead.in-flight", compartment, c -> c.inFlight)
+                .tags(tags).register(Metrics.globalRegistry));
+        compartment.gauges.add(Gauge.builder("integrations.bulkhead.queued", compartment, c -> c.queue.size())
+                .tags(tags).register(Metrics.globalRegistry));
+        compartment.gauges.add(Gauge.builder("integrations.bulkhead.limit", compartment, c -> c.limit.getLimit())
+                .tags(tags).register(Metrics.globalRegistry));
+        compartment.gauges.add(Gauge.builder("integrations.bulkhead.rtt", compartment, c -> c.limit.getRtt())
+                .tags(tags).register(Metrics.globalRegistry));
+        return compartment;
+    }
+
+    private static class Compartment {
+        private final AimdConcurrencyLimit limit;
+        private volatile int inFlight;
+        private final Queue<Waiting> queue = new ArrayDeque<>();
+        private final List<Meter> gauges = new ArrayList<>();
+        private long usedAt;
+        private boolean expired;
+
+        Compartment(AimdConcurrencyLimit limit) {
+            this.limit = limit;
+        }
+    }
+
+    private static class Waiting {
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+
+        Waiting(Exchange exchange, AsyncCallback callback) {
+            this.exchange = exchange;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.apache.camel.component.http.HttpClientConfigurer;
+import org.apache.camel.support.service.ServiceSupport;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Connection pool shared by the HTTP endpoints of an integration. Each target (HTTP route) gets at most maxPerRoute
+ * connections, which are kept alive according to {@link TrafficAwareKeepAliveStrategy} rather than being evicted after
+ * a fixed idle time, so that targets receiving an event every few seconds keep reusing their connections.
+ *
+ * The clients built on a shared connection manager don't evict its connections, so once started the pool closes the
+ * connections whose keep-alive expired, and the ones idle for longer than maxKeepAlive, from a background thread of its
+ * own until it is stopped. It is to be added as a service of the Camel context.
+ *
+ * The leased, available and pending connections and the number of new connections (i.e. TCP and TLS handshakes) are
+ * exported with the "pool" tag.
+ */
+public class HttpConnectionPool extends ServiceSupport {
+
+    private final String name;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final TrafficAwareKeepAliveStrategy keepAliveStrategy;
+    private final long maxKeepAlive;
+    private final long evictionPeriod;
+
+    private ScheduledExecutorService evictor;
+
+    /**
+     * @param sslContext       the SSL context of the https connections, or null for the default one
+     * @param hostnameVerifier the hostname verifier of the https connections, or null for the default one
+     */
+    public HttpConnectionPool(String name, SSLContext sslContext, HostnameVerifier hostnameVerifier, int maxTotal,
+            int maxPerRoute, long minKeepAlive, long maxKeepAlive) {
+        this.name = name;
+        this.keepAliveStrategy = new TrafficAwareKeepAliveStrategy(minKeepAlive, maxKeepAlive);
+        this.maxKeepAlive = maxKeepAlive;
+        // the connections outlive their keep-alive by at most half of the shortest one
+        this.evictionPeriod = Math.max(1, minKeepAlive / 2);
+
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslContext == null
+                        ? SSLConnectionSocketFactory.getSocketFactory()
+                        : new SSLConnectionSocketFactory(sslContext, hostnameVerifier))
+                .build();
+
+        // every new connection goes through a handshake, reused ones don't
+        Counter handshakes = Metrics.counter("integrations.http.pool.handshakes", "pool", name);
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = (route, config) -> {
+            handshakes.increment();
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+
+        this.connectionManager = new PoolingHttpClientConnectionManager(registry, connectionFactory);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        Metrics.gauge("integrations.http.pool.connections", Tags.of("pool", name, "state", "leased"), connectionManager,
+                cm -> cm.getTotalStats().getLeased());
+        Metrics.gauge("integrations.http.pool.connections", Tags.of("pool", name, "state", "available"),
+                connectionManager, cm -> cm.getTotalStats().getAvailable());
+        Metrics.gauge("integrations.http.pool.connections", Tags.of("pool", name, "state", "pending"), connectionManager,
+                cm -> cm.getTotalStats().getPending());
+    }
+
+    public HttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public HttpClientConfigurer getClientConfigurer() {
+        return (clientBuilder) -> {
+            // the pool is shared by several endpoints, it must outlive each of their clients
+            clientBuilder.setConnectionManagerShared(true);
+            clientBuilder.setKeepAliveStrategy(keepAliveStrategy);
+        };
+    }
+
+    @Override
+    protected void doStart() {
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HttpConnectionPoolEvictor-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evict, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        connectionManager.shutdown();
+    }
+
+    void evict() {
+        // the connections whose keep-alive expired
+        connectionManager.closeExpiredConnections();
+        // and any connection that stayed idle for longer than the longest keep-alive
+        connectionManager.closeIdleConnections(maxKeepAlive, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.quarkus.logging.Log;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.util.json.JsonObject;
+
+/**
+ * Processes the records a Kafka poll returned for a partition at once, the body being the list of the record exchanges.
+ * The records of other integrations are dropped, ours are decoded in a single pass, grouped by target and then handed
+ * over to the handler one target after the other, keeping the order of the records of each target. The events going to
+ * the same target are thus handed over together, and coalesced if coalescing is enabled.
+ *
+ * Each record is held by the batch until it is handed over, see {@link KafkaOffsetWatermark}, so that the offsets are
+ * committed once the deliveries of the batch are done with.
+ */
+public class IngressBatchProcessor implements Processor {
+
+    private final Predicate typeFilter;
+    private final Processor decoder;
+    private final ProducerTemplate producerTemplate;
+    private final String handlerUri;
+
+    private final DistributionSummary batchSize;
+
+    public IngressBatchProcessor(Predicate typeFilter, Processor decoder, ProducerTemplate producerTemplate,
+            String handlerUri) {
+        this.typeFilter = typeFilter;
+        this.decoder = decoder;
+        this.producerTemplate = producerTemplate;
+        this.handlerUri = handlerUri;
+
+        this.batchSize = Metrics.summary("integrations.ingress.batch.size");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(Exchange exchange) {
+        List<Exchange> records = exchange.getIn().getBody(List.class);
+        batchSize.record(records.size());
+
+        for (List<Exchange> group : groupByTarget(records)) {
+            for (Exchange record : group) {
+                // the hold of the batch, the error routes of the handler may release the hold of the delivery from
+                // the same exchange
+                KafkaOffsetWatermark.PendingOffset pendingOffset = record.getProperty(
+                        KafkaOffsetWatermark.PENDING_OFFSET, KafkaOffsetWatermark.PendingOffset.class);
+                producerTemplate.send(handlerUri, record);
+                if (record.getException() != null) {
+                    Log.warnf(record.getException(), "Kafka record %s of the batch failed",
+                            record.getIn().getHeader("Ce-id"));
+                }
+                if (pendingOffset != null) {
+                    pendingOffset.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the decoded records of our type, grouped by target in the order the targets first appear.
+     */
+    List<List<Exchange>> groupByTarget(List<Exchange> records) {
+        Map<Object, List<Exchange>> groups = new LinkedHashMap<>();
+        for (Exchange record : records) {
+            if (!typeFilter.matches(record)) {
+                KafkaOffsetWatermark.release(record);
+                continue;
+            }
+            try {
+                DelayedRetry.keepRecord(record);
+                decoder.process(record);
+            } catch (Exception e) {
+                Log.warnf(e, "Kafka record ignored because its CloudEvent could not be decoded");
+                KafkaOffsetWatermark.release(record);
+                continue;
+            }
+            JsonObject metadata = record.getIn().getHeader("metadata", JsonObject.class);
+            Object target = metadata == null ? null : metadata.get("url");
+            groups.computeIfAbsent(target, key -> new ArrayList<>()).add(record);
+        }
+        return new ArrayList<>(groups.values());
+    }
+}
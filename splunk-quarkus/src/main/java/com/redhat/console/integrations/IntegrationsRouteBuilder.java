@@ -17,10 +17,21 @@
 package com.redhat.console.integrations;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
 
 import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.vertx.core.http.ConnectionPoolTooBusyException;
+import io.vertx.ext.web.client.WebClientOptions;
+import org.apache.camel.builder.EndpointProducerBuilder;
 import org.apache.camel.builder.endpoint.EndpointRouteBuilder;
 import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.spi.HeaderFilterStrategy;
 import org.apache.http.ProtocolException;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
@@ -36,7 +47,8 @@ import org.eclipse.microprofile.config.ConfigProvider;
 @RegisterForReflection(targets = {
         Exception.class,
         HttpOperationFailedException.class,
-        IOException.class
+        IOException.class,
+        TimeoutException.class
 })
 abstract public class IntegrationsRouteBuilder extends EndpointRouteBuilder {
 
@@ -48,6 +60,114 @@ abstract public class IntegrationsRouteBuilder extends EndpointRouteBuilder {
     // The return type
     public static final String RETURN_TYPE = "com.redhat.console.notifications.history";
 
+    // Non-blocking delivery: the requests are sent from the Vert.x event loops, so that the threads
+    // are not held while waiting for slow endpoints
+    protected static final boolean ASYNC_HTTP_ENABLED = CONFIG.getValue("integrations.http.async.enabled", Boolean.class);
+    private static final int ASYNC_HTTP_MAX_POOL_SIZE = CONFIG.getValue("integrations.http.async.max-pool-size",
+            Integer.class);
+    private static final int ASYNC_HTTP_MAX_WAIT_QUEUE_SIZE = CONFIG.getValue(
+            "integrations.http.async.max-wait-queue-size", Integer.class);
+    private static final int HTTP_CONNECT_TIMEOUT = CONFIG.getValue("camel.component.http.connect-timeout",
+            Integer.class);
+    private static final long HTTP_SOCKET_TIMEOUT = CONFIG.getValue("camel.component.http.socket-timeout", Long.class);
+
+    // Cache of the resolved targets
+    private static final int ENDPOINT_CACHE_MAX_SIZE = CONFIG.getValue("integrations.endpoint-cache.max-size",
+            Integer.class);
+    private static final long ENDPOINT_CACHE_TTL = CONFIG.getValue("integrations.endpoint-cache.ttl", Long.class);
+
+    // Circuit breaker per target
+    private static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = CONFIG.getValue(
+            "integrations.circuit-breaker.failure-threshold", Integer.class);
+    private static final long CIRCUIT_BREAKER_OPEN_DURATION = CONFIG.getValue(
+            "integrations.circuit-breaker.open-duration", Long.class);
+    private static final int CIRCUIT_BREAKER_HALF_OPEN_TRIALS = CONFIG.getValue(
+            "integrations.circuit-breaker.half-open-trials", Integer.class);
+    private static final long CIRCUIT_BREAKER_IDLE_EXPIRY = CONFIG.getValue(
+            "integrations.circuit-breaker.idle-expiry", Long.class);
+
+    // Bulkhead per target host
+    private static final int BULKHEAD_MAX_CONCURRENT = CONFIG.getValue("integrations.bulkhead.max-concurrent",
+            Integer.class);
+    private static final boolean BULKHEAD_ADAPTIVE = CONFIG.getValue("integrations.bulkhead.adaptive.enabled",
+            Boolean.class);
+    private static final int BULKHEAD_ADAPTIVE_MIN_LIMIT = CONFIG.getValue("integrations.bulkhead.adaptive.min-limit",
+            Integer.class);
+    private static final int BULKHEAD_ADAPTIVE_MAX_LIMIT = CONFIG.getValue("integrations.bulkhead.adaptive.max-limit",
+            Integer.class);
+    private static final int BULKHEAD_MAX_QUEUED = CONFIG.getValue("integrations.bulkhead.max-queued", Integer.class);
+    private static final int BULKHEAD_RESUME_THREADS = CONFIG.getValue("integrations.bulkhead.resume-threads",
+            Integer.class);
+    private static final long BULKHEAD_IDLE_EXPIRY = CONFIG.getValue("integrations.bulkhead.idle-expiry", Long.class);
+
+    // Rate limit per target, once the target throttles the requests
+    private static final double RATE_LIMIT_THROTTLED_RATE = CONFIG.getValue("integrations.rate-limit.throttled-rate",
+            Double.class);
+    private static final double RATE_LIMIT_MIN_RATE = CONFIG.getValue("integrations.rate-limit.min-rate", Double.class);
+    private static final long RATE_LIMIT_RECOVERY_PERIOD = CONFIG.getValue("integrations.rate-limit.recovery-period",
+            Long.class);
+    private static final long RATE_LIMIT_MAX_DELAY = CONFIG.getValue("integrations.rate-limit.max-delay", Long.class);
+    private static final int RATE_LIMIT_MAX_ATTEMPTS = CONFIG.getValue("integrations.rate-limit.max-attempts",
+            Integer.class);
+
+    // Processing of the ingress records a whole poll at once
+    protected static final boolean INGRESS_BATCH_ENABLED = CONFIG.getValue("integrations.ingress.batch.enabled",
+            Boolean.class);
+    protected static final int INGRESS_BATCH_MAX_RECORDS = CONFIG.getValue("camel.component.kafka.max-poll-records",
+            Integer.class);
+    protected static final long INGRESS_BATCH_TIMEOUT = CONFIG.getValue("integrations.ingress.batch.timeout",
+            Long.class);
+
+    // Parallel processing of the ingress records, striped by key
+    protected static final int INGRESS_STRIPES = CONFIG.getValue("integrations.ingress.stripes", Integer.class);
+    protected static final String INGRESS_STRIPE_KEY = CONFIG.getValue("integrations.ingress.stripe-key", String.class);
+    protected static final int INGRESS_STRIPE_QUEUE_SIZE = CONFIG.getValue("integrations.ingress.stripe-queue-size",
+            Integer.class);
+    protected static final long INGRESS_STRIPE_WAIT_TIMEOUT = CONFIG.getValue("integrations.ingress.stripe-wait-timeout",
+            Long.class);
+
+    // Asynchronous producer of the history records
+    protected static final int RETURN_QUEUE_SIZE = CONFIG.getValue("integrations.return.queue-size", Integer.class);
+    protected static final int RETURN_LINGER_MS = CONFIG.getValue("integrations.return.linger-ms", Integer.class);
+    protected static final int RETURN_BATCH_SIZE = CONFIG.getValue("integrations.return.batch-size", Integer.class);
+    protected static final String RETURN_COMPRESSION = CONFIG.getValue("integrations.return.compression",
+            String.class);
+
+    // Delayed retries of the deliveries that failed because the target was unavailable
+    private static final String RETRY_TOPIC = CONFIG.getValue("mp.messaging.kafka.retry.topic", String.class);
+    private static final int RETRY_MAX_ATTEMPTS = CONFIG.getValue("integrations.retry.max-attempts", Integer.class);
+    private static final long RETRY_INITIAL_DELAY = CONFIG.getValue("integrations.retry.initial-delay", Long.class);
+    private static final double RETRY_MULTIPLIER = CONFIG.getValue("integrations.retry.multiplier", Double.class);
+    private static final long RETRY_MAX_POLL_INTERVAL = CONFIG.getValue("camel.component.kafka.max-poll-interval-ms",
+            Long.class);
+
+    // Disk spool of the deliveries that failed because the target was unavailable
+    private static final boolean SPOOL_ENABLED = CONFIG.getValue("integrations.spool.enabled", Boolean.class);
+    private static final String SPOOL_DIRECTORY = CONFIG.getValue("integrations.spool.directory", String.class);
+    private static final int SPOOL_SEGMENT_SIZE = CONFIG.getValue("integrations.spool.segment-size", Integer.class);
+    private static final long SPOOL_MAX_BYTES = CONFIG.getValue("integrations.spool.max-bytes", Long.class);
+    protected static final long SPOOL_REPLAY_INTERVAL = CONFIG.getValue("integrations.spool.replay-interval",
+            Long.class);
+    private static final int SPOOL_REPLAY_BATCH = CONFIG.getValue("integrations.spool.replay-batch", Integer.class);
+    private static final long SPOOL_REPLAY_TIMEOUT = CONFIG.getValue("integrations.spool.replay-timeout", Long.class);
+
+    // shared by all the routes, recovered from disk once
+    private static TargetSpool targetSpool;
+
+    // Delivery metrics per target, only the busiest targets get their own series
+    private static final int METRICS_TOP_TARGETS = CONFIG.getValue("integrations.metrics.top-targets", Integer.class);
+
+    private static DeliveryMetrics deliveryMetrics;
+
+    // Connection pools of the blocking HTTP client
+    private static final int HTTP_POOL_MAX_TOTAL = CONFIG.getValue("integrations.http.pool.max-total", Integer.class);
+    private static final int HTTP_POOL_MAX_PER_ROUTE = CONFIG.getValue("integrations.http.pool.max-per-route",
+            Integer.class);
+    private static final long HTTP_POOL_MIN_KEEP_ALIVE = CONFIG.getValue("integrations.http.pool.min-keep-alive",
+            Long.class);
+    private static final long HTTP_POOL_MAX_KEEP_ALIVE = CONFIG.getValue("integrations.http.pool.max-keep-alive",
+            Long.class);
+
     @Override
     public void configure() throws Exception {
         configureErrorHandler();
@@ -66,5 +186,97 @@ abstract public class IntegrationsRouteBuilder extends EndpointRouteBuilder {
         onException(ProtocolException.class)
                 .to(direct("secureConnectionFailed"))
                 .handled(true);
+        onException(CircuitBreakerOpenException.class)
+                .to(direct("circuitOpen"))
+                .handled(true);
+        // failures specific to the non-blocking HTTP client
+        onException(TimeoutException.class, ConnectionPoolTooBusyException.class)
+                .to(direct("ioFailed"))
+                .handled(true);
+        // any other failure, so that the delivery never keeps its Kafka record held
+        onException(Exception.class)
+                .to(direct("deliveryError"))
+                .handled(true);
+    }
+
+    protected static ResolvedEndpointCache newEndpointCache(String name, ResolvedEndpointCache.Resolver resolver) {
+        return new ResolvedEndpointCache(name, ENDPOINT_CACHE_MAX_SIZE, ENDPOINT_CACHE_TTL, resolver);
+    }
+
+    protected static TargetCircuitBreaker newCircuitBreaker() {
+        return new TargetCircuitBreaker(CIRCUIT_BREAKER_FAILURE_THRESHOLD, CIRCUIT_BREAKER_OPEN_DURATION,
+                CIRCUIT_BREAKER_HALF_OPEN_TRIALS, CIRCUIT_BREAKER_IDLE_EXPIRY, getDeliveryMetrics());
+    }
+
+    /**
+     * Must be called from {@link #configure()}, the deliveries that waited for their turn carry on from a pool of the
+     * Camel context.
+     */
+    protected HostBulkhead newHostBulkhead() {
+        Executor resumeExecutor = getContext().getExecutorServiceManager().newFixedThreadPool(this, "HostBulkhead",
+                BULKHEAD_RESUME_THREADS);
+        if (BULKHEAD_ADAPTIVE) {
+            return new HostBulkhead(BULKHEAD_MAX_CONCURRENT, BULKHEAD_ADAPTIVE_MIN_LIMIT, BULKHEAD_ADAPTIVE_MAX_LIMIT,
+                    BULKHEAD_MAX_QUEUED, BULKHEAD_IDLE_EXPIRY, resumeExecutor);
+        }
+        return new HostBulkhead(BULKHEAD_MAX_CONCURRENT, BULKHEAD_MAX_CONCURRENT, BULKHEAD_MAX_CONCURRENT,
+                BULKHEAD_MAX_QUEUED, BULKHEAD_IDLE_EXPIRY, resumeExecutor);
+    }
+
+    /**
+     * Must be called from {@link #configure()}, the deferred requests carry on from the scheduler threads.
+     */
+    protected TargetRateLimiter newTargetRateLimiter() {
+        ScheduledExecutorService scheduler = getContext().getExecutorServiceManager()
+                .newScheduledThreadPool(this, "TargetRateLimiter", BULKHEAD_RESUME_THREADS);
+        return new TargetRateLimiter(RATE_LIMIT_THROTTLED_RATE, RATE_LIMIT_MIN_RATE, RATE_LIMIT_RECOVERY_PERIOD,
+                RATE_LIMIT_MAX_DELAY, RATE_LIMIT_MAX_ATTEMPTS, scheduler, scheduler);
+    }
+
+    protected static DelayedRetry newDelayedRetry() {
+        return new DelayedRetry(RETRY_TOPIC, RETRY_MAX_ATTEMPTS, RETRY_INITIAL_DELAY, RETRY_MULTIPLIER,
+                RETRY_MAX_POLL_INTERVAL);
+    }
+
+    protected static synchronized TargetSpool getTargetSpool() throws IOException {
+        if (targetSpool == null) {
+            TargetSpool spool = new TargetSpool(SPOOL_ENABLED, Path.of(SPOOL_DIRECTORY), SPOOL_SEGMENT_SIZE,
+                    SPOOL_MAX_BYTES, SPOOL_REPLAY_BATCH, SPOOL_REPLAY_TIMEOUT);
+            spool.recover();
+            targetSpool = spool;
+        }
+        return targetSpool;
+    }
+
+    protected static synchronized DeliveryMetrics getDeliveryMetrics() {
+        if (deliveryMetrics == null) {
+            deliveryMetrics = new DeliveryMetrics(COMPONENT_NAME, METRICS_TOP_TARGETS);
+        }
+        return deliveryMetrics;
+    }
+
+    protected static HttpConnectionPool newConnectionPool(String name, SSLContext sslContext,
+            HostnameVerifier hostnameVerifier) {
+        return new HttpConnectionPool(name, sslContext, hostnameVerifier, HTTP_POOL_MAX_TOTAL, HTTP_POOL_MAX_PER_ROUTE,
+                HTTP_POOL_MIN_KEEP_ALIVE, HTTP_POOL_MAX_KEEP_ALIVE);
+    }
+
+    /**
+     * The non-blocking counterpart of the https("dynamic") endpoints. The target is taken from the Exchange.HTTP_URI
+     * header and non 2xx responses throw an {@link HttpOperationFailedException}, as with the blocking client.
+     */
+    protected EndpointProducerBuilder asyncHttps(HeaderFilterStrategy headerFilterStrategy, boolean trustAll) {
+        WebClientOptions webClientOptions = new WebClientOptions()
+                .setConnectTimeout(HTTP_CONNECT_TIMEOUT)
+                .setMaxPoolSize(ASYNC_HTTP_MAX_POOL_SIZE)
+                .setMaxWaitQueueSize(ASYNC_HTTP_MAX_WAIT_QUEUE_SIZE)
+                .setTrustAll(trustAll)
+                .setVerifyHost(!trustAll);
+
+        return vertxHttp("https://dynamic")
+                .httpMethod("POST")
+                .headerFilterStrategy(headerFilterStrategy)
+                .timeout(HTTP_SOCKET_TIMEOUT)
+                .webClientOptions(webClientOptions);
     }
 }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.Message;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.camel.support.SynchronizationAdapter;
+
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+
+/**
+ * Commits the offsets of the Kafka records only once they are done with, although the records of a partition complete
+ * out of order once their deliveries run in parallel. The offset committed for a partition is the highest offset up to
+ * which all the records received from that partition are done with, so that no record is lost on a crash or a
+ * rebalance, at the cost of records being processed again.
+ *
+ * A record is tracked from the start of the consumer route with {@link #track(Exchange)}, and is done with once its
+ * exchange completed. A delivery that carries on asynchronously, after an aggregation or a seda queue, holds the record
+ * with {@link #hold(Exchange)} until {@link #release(Exchange)} is called once its history record is written, or once
+ * it is retried or spooled. The error routes release it whatever the failure, the unexpected ones included.
+ *
+ * The gap between the highest offset processed and the offset committed is exported per partition.
+ */
+public class KafkaOffsetWatermark {
+
+    public static final String PENDING_OFFSET = "pendingOffset";
+    public static final String RELEASED = "offsetReleased";
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Tracks the record of the exchange, until the exchange completes and the deliveries holding the record release it.
+     */
+    public void track(Exchange exchange) {
+        Message in = exchange.getIn();
+        KafkaManualCommit manualCommit = in.getHeader(KafkaConstants.MANUAL_COMMIT, KafkaManualCommit.class);
+        Long offset = in.getHeader(KafkaConstants.OFFSET, Long.class);
+        if (manualCommit == null || offset == null) {
+            return;
+        }
+
+        String topic = in.getHeader(KafkaConstants.TOPIC, String.class);
+        Integer partitionId = in.getHeader(KafkaConstants.PARTITION, Integer.class);
+        Partition partition = partitions.computeIfAbsent(topic + "-" + partitionId,
+                key -> new Partition(topic, partitionId));
+
+        PendingOffset pendingOffset = partition.track(offset, manualCommit);
+        exchange.setProperty(PENDING_OFFSET, pendingOffset);
+        // failed or not, the record is not processed again
+        exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange exchange) {
+                pendingOffset.release();
+            }
+        });
+    }
+
+    /**
+     * Holds the record of the exchange until the delivery is done with.
+     */
+    public static void hold(Exchange exchange) {
+        PendingOffset pendingOffset = exchange.getProperty(PENDING_OFFSET, PendingOffset.class);
+        if (pendingOffset != null) {
+            pendingOffset.hold();
+        }
+    }
+
+    /**
+     * Takes over a hold of the record from {@link #hold(Exchange)} for the delivery of the exchange, which holds and
+     * releases the returned pending delivery from now on instead of the record. The record is released once the pending
+     * delivery is done with, so that one can wait for the delivery alone, see {@link PendingOffset#awaitDone(long)}.
+     *
+     * @return the pending delivery, or null if the record is not tracked.
+     */
+    public static PendingOffset holdDelivery(Exchange exchange) {
+        PendingOffset pendingOffset = exchange.getProperty(PENDING_OFFSET, PendingOffset.class);
+        if (pendingOffset == null) {
+            return null;
+        }
+        PendingOffset delivery = new PendingOffset(pendingOffset);
+        exchange.setProperty(PENDING_OFFSET, delivery);
+        return delivery;
+    }
+
+    /**
+     * Releases the records held by the delivery, coalesced or not.
+     */
+    @SuppressWarnings("unchecked")
+    public static void release(Exchange exchange) {
+        // at most once per delivery
+        if (exchange.getProperty(RELEASED, false, Boolean.class)) {
+            return;
+        }
+        exchange.setProperty(RELEASED, true);
+
+        List<CoalescedEvent> coalescedEvents = exchange.getProperty(COALESCED_EVENTS, List.class);
+        if (coalescedEvents != null) {
+            for (CoalescedEvent coalescedEvent : coalescedEvents) {
+                if (coalescedEvent.getPendingOffset() != null) {
+                    coalescedEvent.getPendingOffset().release();
+                }
+            }
+        } else {
+            PendingOffset pendingOffset = exchange.getProperty(PENDING_OFFSET, PendingOffset.class);
+            if (pendingOffset != null) {
+                pendingOffset.release();
+            }
+        }
+        exchange.removeProperty(PENDING_OFFSET);
+    }
+
+    long getCommittedOffset(String topic, int partitionId) {
+        Partition partition = partitions.get(topic + "-" + partitionId);
+        return partition == null ? -1 : partition.committed;
+    }
+
+    /**
+     * A record of a partition, which is done with once its exchange and all the deliveries holding it released it. Or a
+     * delivery of such a record, which releases the record once done with, see {@link #holdDelivery(Exchange)}.
+     */
+    public static class PendingOffset {
+        private final Partition partition;
+        private final long offset;
+        private final KafkaManualCommit manualCommit;
+        private final PendingOffset record;
+        private int holders = 1;
+
+        PendingOffset(Partition partition, long offset, KafkaManualCommit manualCommit) {
+            this.partition = partition;
+            this.offset = offset;
+            this.manualCommit = manualCommit;
+            this.record = null;
+        }
+
+        PendingOffset(PendingOffset record) {
+            this.partition = null;
+            this.offset = record.offset;
+            this.manualCommit = null;
+            this.record = record;
+        }
+
+        synchronized void hold() {
+            holders++;
+        }
+
+        void release() {
+            boolean done;
+            synchronized (this) {
+                done = holders > 0 && --holders == 0;
+                if (done) {
+                    notifyAll();
+                }
+            }
+            if (done && record != null) {
+                record.release();
+            } else if (done) {
+                partition.complete(this);
+            }
+        }
+
+        synchronized boolean isDone() {
+            return holders == 0;
+        }
+
+        /**
+         * Waits until the record is done with, at most the given time in milliseconds.
+         *
+         * @return false if the record is still held.
+         */
+        public synchronized boolean awaitDone(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (holders > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private static class Partition {
+        // by offset, which is the order they were received in
+        private final TreeMap<Long, PendingOffset> pending = new TreeMap<>();
+        private long committed = -1;
+        private long processed = -1;
+
+        Partition(String topic, int partitionId) {
+            Metrics.gauge("integrations.kafka.commit.gap", Tags.of("topic", topic, "partition",
+                    Integer.toString(partitionId)), this, Partition::getGap);
+        }
+
+        synchronized PendingOffset track(long offset, KafkaManualCommit manualCommit) {
+            PendingOffset pendingOffset = new PendingOffset(this, offset, manualCommit);
+            pending.put(offset, pendingOffset);
+            return pendingOffset;
+        }
+
+        synchronized void complete(PendingOffset pendingOffset) {
+            processed = Math.max(processed, pendingOffset.offset);
+            PendingOffset watermark = null;
+            while (!pending.isEmpty() && pending.firstEntry().getValue().isDone()) {
+                watermark = pending.pollFirstEntry().getValue();
+            }
+            if (watermark != null) {
+                committed = watermark.offset;
+                // commits the offset following the watermark, all the records before it are done with, the commit is
+                // only queued for the consumer thread so it is cheap enough to keep the commits in order
+                watermark.manualCommit.commit();
+            }
+        }
+
+        synchronized long getGap() {
+            return Math.max(0, processed - committed);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.quarkus.logging.Log;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.json.JsonObject;
+
+/**
+ * Picks the stripe an event is processed on, from its key: the target URL of the event, or its orgId. The key is read
+ * from the decoded event if it already is, or else streamed from the CloudEvent without decoding it, so that the
+ * stripes decode their events themselves.
+ *
+ * Each stripe processes its events one at a time and only moves on to the next event once the delivery of the
+ * previous one is done with, see {@link #awaitDelivery(Exchange)}, so the events of a partition with different keys
+ * are delivered in parallel while the events with the same key are delivered in order. A stripe waits at most
+ * waitTimeout milliseconds for a delivery, the order of the events being no longer guaranteed beyond.
+ *
+ * The stripe is stored in the {@link #STRIPE} exchange property. The Kafka record is held until the stripe handed the
+ * event over, see {@link KafkaOffsetWatermark}.
+ */
+public class KeyStriper implements Processor {
+
+    public static final String STRIPE = "ingressStripe";
+    public static final String URL_KEY = "url";
+    public static final String ORG_ID_KEY = "orgId";
+
+    // the delivery held by the stripe, apart from the pending offset which the error routes may remove
+    private static final String STRIPE_HOLD = "ingressStripeHold";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final List<String> URL_PATH = List.of("data", "notif-metadata", "url");
+    private static final List<String> ORG_ID_PATH = List.of("data", "org_id");
+
+    private final int stripes;
+    private final String key;
+    private final long waitTimeout;
+
+    private final Counter waitTimeouts;
+
+    public KeyStriper(int stripes, String key, long waitTimeout) {
+        if (!URL_KEY.equals(key) && !ORG_ID_KEY.equals(key)) {
+            throw new IllegalArgumentException("Unknown stripe key " + key);
+        }
+        this.stripes = stripes;
+        this.key = key;
+        this.waitTimeout = waitTimeout;
+
+        this.waitTimeouts = Metrics.counter("integrations.ingress.stripe.wait-timeouts");
+    }
+
+    @Override
+    public void process(Exchange exchange) {
+        exchange.setProperty(STRIPE, stripe(getKey(exchange.getIn())));
+        KafkaOffsetWatermark.hold(exchange);
+    }
+
+    /**
+     * Takes over the hold of the record for the delivery once the event is on its stripe. The hold is released by
+     * {@link #awaitDelivery(Exchange)}, or once the exchange completes if the stripe failed before.
+     */
+    public static void enter(Exchange exchange) {
+        KafkaOffsetWatermark.PendingOffset delivery = KafkaOffsetWatermark.holdDelivery(exchange);
+        if (delivery != null) {
+            exchange.setProperty(STRIPE_HOLD, delivery);
+            exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(Exchange exchange) {
+                    release(exchange);
+                }
+            });
+        }
+    }
+
+    /**
+     * Releases the hold of the stripe once the event was handed over to the handler, and waits until the delivery is
+     * done with, i.e. until it is no longer held, so that the next event of the stripe is delivered after it.
+     */
+    public void awaitDelivery(Exchange exchange) throws InterruptedException {
+        KafkaOffsetWatermark.PendingOffset delivery = release(exchange);
+        if (delivery != null && !delivery.awaitDone(waitTimeout)) {
+            waitTimeouts.increment();
+            Log.warnf("Stripe %s moved on before the delivery of event %s was done with",
+                    exchange.getProperty(STRIPE), exchange.getIn().getHeader("Ce-id"));
+        }
+    }
+
+    int stripe(Object keyValue) {
+        return keyValue == null ? 0 : Math.floorMod(keyValue.hashCode(), stripes);
+    }
+
+    private Object getKey(Message in) {
+        JsonObject metadata = in.getHeader("metadata", JsonObject.class);
+        if (metadata != null) {
+            return URL_KEY.equals(key) ? metadata.get(URL_KEY) : in.getHeader(ORG_ID_KEY);
+        }
+        try {
+            return readField(in.getBody(String.class), URL_KEY.equals(key) ? URL_PATH : ORG_ID_PATH);
+        } catch (IOException e) {
+            // the stripe fails to decode it as well
+            Log.debugf(e, "Stripe key of the Kafka record could not be read");
+            return null;
+        }
+    }
+
+    private static KafkaOffsetWatermark.PendingOffset release(Exchange exchange) {
+        KafkaOffsetWatermark.PendingOffset delivery = (KafkaOffsetWatermark.PendingOffset) exchange
+                .removeProperty(STRIPE_HOLD);
+        if (delivery != null) {
+            delivery.release();
+        }
+        return delivery;
+    }
+
+    /**
+     * Streams the given JSON object and returns the scalar field at the given path, or null if there is none. The
+     * nested objects may be given as JSON strings, as the "data" of the CloudEvents, see {@link CloudEventDecoder}. The
+     * other fields are skipped.
+     */
+    static String readField(String json, List<String> path) throws IOException {
+        if (json == null) {
+            return null;
+        }
+
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            for (int depth = 0; depth < path.size(); depth++) {
+                JsonToken valueToken = seek(parser, path.get(depth));
+                if (valueToken == null) {
+                    return null;
+                } else if (depth == path.size() - 1) {
+                    return valueToken.isScalarValue() ? parser.getText() : null;
+                } else if (valueToken == JsonToken.VALUE_STRING) {
+                    // the object given as a JSON string
+                    return readField(parser.getText(), path.subList(depth + 1, path.size()));
+                } else if (valueToken != JsonToken.START_OBJECT) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the parser to the value of the given field of the current object.
+     *
+     * @return the token of the value, or null if the object has no such field.
+     */
+    private static JsonToken seek(JsonParser parser, String field) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (field.equals(fieldName)) {
+                return valueToken;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+}
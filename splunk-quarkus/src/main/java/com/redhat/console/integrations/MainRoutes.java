@@ -1,9 +1,16 @@
 package com.redhat.console.integrations;
 
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.apache.camel.Exchange;
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.PredicateBuilder;
+import org.apache.camel.builder.endpoint.dsl.SedaEndpointBuilderFactory;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.processor.aggregate.GroupedExchangeAggregationStrategy;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import static com.redhat.console.integrations.OutgoingCloudEventBuilder.OUTCOME_EXCHANGE_PROPERTY;
@@ -32,13 +39,33 @@ public class MainRoutes extends IntegrationsRouteBuilder {
     @Inject
     OutgoingCloudEventBuilder outgoingCloudEventBuilder;
 
+    private final DelayedRetry delayedRetry = newDelayedRetry();
+
+    private TargetSpool targetSpool;
+
+    private final KafkaOffsetWatermark offsetWatermark = new KafkaOffsetWatermark();
+
+    private final DeliveryMetrics deliveryMetrics = getDeliveryMetrics();
+
     @Override
     public void configure() throws Exception {
         super.configure();
 
         getContext().getGlobalOptions().put(Exchange.LOG_EIP_NAME, LOGGER_NAME);
-
-        configureIngress();
+        targetSpool = getTargetSpool();
+
+        if (INGRESS_BATCH_ENABLED) {
+            configureBatchIngress();
+        } else {
+            configureIngress();
+        }
+        if (INGRESS_STRIPES > 0) {
+            configureStripes();
+        }
+        configureRetry();
+        if (targetSpool.isEnabled()) {
+            configureSpoolReplay();
+        }
         configureReturn();
         configureSuccessHandler();
     }
@@ -46,22 +73,144 @@ public class MainRoutes extends IntegrationsRouteBuilder {
     private void configureIngress() {
         from(kafka(kafkaIngressTopic).groupId(kafkaIngressGroupId))
                 .routeId("ingress")
-                // Decode CloudEvent
-                .process(new CloudEventDecoder())
-                // We check that this is our type.
+                // The offset is only committed once the record and all the records before it are done with
+                .process(offsetWatermark::track)
+                // the latency of the record is timed from its Kafka timestamp on
+                .process(StageTimer::ingress)
+                // We check that this is our type before decoding the whole CloudEvent.
                 // Otherwise, we ignore the message there will be another component that takes
                 // care
-                .filter().simple("${header.ce-type} == '" + CE_TYPE + "'")
+                .filter(new CloudEventTypeFilter(CE_TYPE))
+                // Keep the record as is, should its delivery have to be retried
+                .process(DelayedRetry::keepRecord)
+                // The stripes decode their records themselves
+                .choice()
+                .when(constant(INGRESS_STRIPES > 0))
+                .to(direct("stripe"))
+                .otherwise()
+                // Decode CloudEvent
+                .process(new CloudEventDecoder())
                 // Log the parsed cloudevent message.
                 .to(log("com.redhat.console.integrations?level=DEBUG"))
                 .to(direct("handler"))
                 .end();
     }
 
+    private void configureBatchIngress() {
+        from(kafka(kafkaIngressTopic).groupId(kafkaIngressGroupId))
+                .routeId("ingress")
+                // The offset is only committed once the record and all the records before it are done with
+                .process(offsetWatermark::track)
+                // the latency of the record is timed from its Kafka timestamp on
+                .process(StageTimer::ingress)
+                // the record is held by the batch until it is handed over
+                .process(KafkaOffsetWatermark::hold)
+                // The records of a partition in a poll make a batch, the last one completes it, the partitions are
+                // only ever polled by a single consumer so the batches of different consumers never mix
+                .aggregate(header(KafkaConstants.PARTITION), new GroupedExchangeAggregationStrategy())
+                .eagerCheckCompletion()
+                .completionPredicate(PredicateBuilder.or(
+                        header(KafkaConstants.LAST_RECORD_BEFORE_COMMIT).isEqualTo(true),
+                        header(KafkaConstants.LAST_POLL_RECORD).isEqualTo(true)))
+                .completionSize(INGRESS_BATCH_MAX_RECORDS)
+                .completionTimeout(INGRESS_BATCH_TIMEOUT)
+                // Filter, decode and group the records by target in a single pass
+                .process(new IngressBatchProcessor(new CloudEventTypeFilter(CE_TYPE), new CloudEventDecoder(),
+                        getContext().createProducerTemplate(), INGRESS_STRIPES > 0 ? "direct:stripe" : "direct:handler"))
+                .end();
+    }
+
+    private void configureStripes() {
+        KeyStriper keyStriper = new KeyStriper(INGRESS_STRIPES, INGRESS_STRIPE_KEY, INGRESS_STRIPE_WAIT_TIMEOUT);
+
+        // Hand the events over to the stripe of their key, a full stripe blocks the partition
+        from(direct("stripe"))
+                .routeId("stripe")
+                .process(keyStriper)
+                .toD(stripe("${exchangeProperty." + KeyStriper.STRIPE + "}").blockWhenFull(true));
+
+        // Each stripe decodes and delivers its events one after the other, in order
+        for (int i = 0; i < INGRESS_STRIPES; i++) {
+            RouteDefinition stripe = from(stripe(Integer.toString(i)))
+                    .routeId("stripe-" + i)
+                    .process(KeyStriper::enter);
+            if (!INGRESS_BATCH_ENABLED) {
+                // the batches decode their records before
+                stripe.process(new CloudEventDecoder())
+                        .to(log("com.redhat.console.integrations?level=DEBUG"));
+            }
+            stripe.to(direct("handler"))
+                    // the next event waits until this one is delivered
+                    .process(keyStriper::awaitDelivery);
+        }
+    }
+
+    private SedaEndpointBuilderFactory.SedaEndpointBuilder stripe(String stripe) {
+        return seda("stripe-" + stripe).size(INGRESS_STRIPE_QUEUE_SIZE);
+    }
+
+    private void configureRetry() {
+        // Publish the events whose delivery failed to the tier topic of their next attempt
+        from(direct("retry"))
+                .routeId("retry")
+                .log(LoggingLevel.WARN, "Delivery of event ${header.ce-id} (orgId ${header.orgId} account ${header.accountId})"
+                                        + " to ${exchangeProperty.targetUrl} failed, retrying later: ${exception.message}")
+                .process(delayedRetry::schedule)
+                .split(body())
+                .to(kafka(delayedRetry.tierTopic(1)))
+                .end()
+                .process(KafkaOffsetWatermark::release);
+
+        // Deliver the events of each tier again once they are due
+        for (int attempt = 1; attempt <= delayedRetry.getMaxAttempts(); attempt++) {
+            // a record at a time, so that the consumer polls again right after each wait
+            from(kafka(delayedRetry.tierTopic(attempt)).groupId(kafkaIngressGroupId).maxPollRecords(1))
+                    .routeId("retry-" + attempt)
+                    .process(offsetWatermark::track)
+                    .process(DelayedRetry::awaitDue)
+                    .process(DelayedRetry::keepRecord)
+                    .process(new CloudEventDecoder())
+                    .to(direct("handler"));
+        }
+    }
+
+    private void configureSpoolReplay() {
+        // Replay the spooled events of the targets that are back, a few at a time
+        from(timer("spoolReplay").period(SPOOL_REPLAY_INTERVAL))
+                .routeId("spoolReplay")
+                .setBody(method(targetSpool, "replay"))
+                .split(body())
+                .process(TargetSpool::prepareReplay)
+                .process(new CloudEventDecoder())
+                .to(direct("handler"))
+                .end();
+    }
+
     private void configureReturn() {
         from(direct("return"))
                 .routeId("return")
-                .to(kafka(kafkaReturnTopic));
+                // the delivery thread only queues the history records, a full queue makes the deliveries wait
+                .to(returnQueue().blockWhenFull(true).waitForTaskToComplete("Never"));
+
+        from(returnQueue())
+                .routeId("return-producer")
+                // replayed events and Kafka records are done with once their history records are sent, failed or not,
+                // so that a crash before then delivers them again rather than losing their history records
+                .onCompletion()
+                .process(targetSpool::acknowledge)
+                .process(KafkaOffsetWatermark::release)
+                .end()
+                // Messages coalesced into a single request come back with one history record each, the producer sends
+                // every element of a list as its own record. The exchange completes once the broker acknowledged the
+                // records, on a thread of the producer rather than on the queue consumer.
+                .to(kafka(kafkaReturnTopic)
+                        .lingerMs(RETURN_LINGER_MS)
+                        .producerBatchSize(RETURN_BATCH_SIZE)
+                        .compressionCodec(RETURN_COMPRESSION));
+    }
+
+    private SedaEndpointBuilderFactory.SedaEndpointBuilder returnQueue() {
+        return seda("return").size(RETURN_QUEUE_SIZE);
     }
 
     private void configureSuccessHandler() {
@@ -72,6 +221,7 @@ public class MainRoutes extends IntegrationsRouteBuilder {
                      + " to ${exchangeProperty.targetUrl}")
                 .setProperty(OUTCOME_EXCHANGE_PROPERTY, simple("Event ${header.ce-id} sent successfully"))
                 .setProperty(SUCCESSFUL_EXCHANGE_PROPERTY, constant(true))
+                .process(deliveryMetrics.outcome("success"))
                 .process(outgoingCloudEventBuilder)
                 .to(direct("return"));
     }
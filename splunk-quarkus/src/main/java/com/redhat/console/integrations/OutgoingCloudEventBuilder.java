@@ -2,15 +2,19 @@ package com.redhat.console.integrations;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
-import org.apache.camel.util.json.JsonObject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+
 /**
  * Transformer to create a Map from the outcome of the actual component.
  */
@@ -29,35 +33,53 @@ public class OutgoingCloudEventBuilder implements Processor {
     @ConfigProperty(name = "integrations.component.name")
     String source;
 
+    @ConfigProperty(name = "integrations.history.stage-timings", defaultValue = "false")
+    boolean stageTimings;
+
+    private HistoryEventTemplate template;
+
+    @PostConstruct
+    void init() {
+        template = new HistoryEventTemplate(CE_TYPE, CE_SPEC_VERSION, source);
+    }
+
+    @SuppressWarnings("unchecked")
     public void process(Exchange exchange) throws Exception {
 
         Message in = exchange.getIn();
 
-        JsonObject details = new JsonObject();
-        details.put("target", exchange.getProperty("targetUrl", String.class));
-        details.put("type", in.getHeader("Ce-type", String.class));
-        details.put("outcome", exchange.getProperty(OUTCOME_EXCHANGE_PROPERTY, String.class));
-
-        JsonObject data = new JsonObject();
-        data.put("successful", exchange.getProperty(SUCCESSFUL_EXCHANGE_PROPERTY, Boolean.class));
-        // TODO use header("kafka.TIMESTAMP") ?
-        data.put("duration", System.currentTimeMillis() - exchange.getProperty("timeIn", Long.class));
-        data.put("details", details);
-
-        JsonObject outgoingCloudEvent = new JsonObject();
-        outgoingCloudEvent.put("type", CE_TYPE);
-        outgoingCloudEvent.put("specversion", CE_SPEC_VERSION);
-        outgoingCloudEvent.put("source", source);
-        outgoingCloudEvent.put("id", in.getHeader("ce-id", String.class));
-        outgoingCloudEvent.put("time", LocalDateTime.now(ZoneOffset.UTC).toString());
-        // TODO The serialization to JSON shouldn't be needed here. Migrate this later!
-        outgoingCloudEvent.put("data", data.toJson());
+        // Messages coalesced into a single request get one history record each
+        List<CoalescedEvent> coalescedEvents = exchange.getProperty(COALESCED_EVENTS, List.class);
+        long[] stages = stageTimings ? StageTimer.durations(exchange) : null;
+        Object body;
+        if (coalescedEvents == null) {
+            body = buildCloudEvent(exchange, in.getHeader("ce-id", String.class), in.getHeader("Ce-type", String.class),
+                    exchange.getProperty(StageTimer.TIME_IN, Long.class), stages, StageTimer.complete(exchange));
+        } else {
+            List<String> cloudEvents = new ArrayList<>(coalescedEvents.size());
+            for (CoalescedEvent coalescedEvent : coalescedEvents) {
+                // each event has its own Kafka record
+                cloudEvents.add(buildCloudEvent(exchange, coalescedEvent.getId(), coalescedEvent.getType(),
+                        coalescedEvent.getTimeIn(), stages, StageTimer.complete(coalescedEvent.getRecordTimestamp())));
+            }
+            body = cloudEvents;
+        }
 
         /*
          * Removes all headers that start with "ce-".
          * The header name is converted to lower case before the prefix match is tested.
          */
         in.removeHeaders("ce-*");
-        in.setBody(outgoingCloudEvent.toJson());
+        in.setBody(body);
+    }
+
+    private String buildCloudEvent(Exchange exchange, String id, String type, Long timeIn, long[] stages,
+            long endToEnd) {
+        // the duration of the delivery, from the handler on, the end-to-end latency is among the stages
+        // TODO The serialization of the data to a JSON string shouldn't be needed here. Migrate this later!
+        return template.write(id, LocalDateTime.now(ZoneOffset.UTC).toString(),
+                exchange.getProperty(SUCCESSFUL_EXCHANGE_PROPERTY, Boolean.class), System.currentTimeMillis() - timeIn,
+                exchange.getProperty("targetUrl", String.class), type,
+                exchange.getProperty(OUTCOME_EXCHANGE_PROPERTY, String.class), stages, endToEnd);
     }
 }
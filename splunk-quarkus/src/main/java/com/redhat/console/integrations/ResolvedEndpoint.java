@@ -0,0 +1,109 @@
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+
+import org.apache.camel.Exchange;
+import org.apache.http.ProtocolException;
+
+/**
+ * What the delivery of a message needs to know about its target, once the target URL has been validated and cleaned
+ * and the Authorization header computed. When the resolution failed, only its verdict is kept, i.e. the kind of the
+ * failure and its message, and a new exception is thrown for every message sent to the same target, so that the
+ * exchanges never share an exception.
+ */
+public class ResolvedEndpoint {
+
+    public static final String TARGET_URL = "targetUrl";
+    public static final String TARGET_KEY = "targetKey";
+
+    private final String targetUrl;
+    private final String authorization;
+    private final String targetKey;
+    private final Class<? extends Exception> failureType;
+    private final String failureMessage;
+
+    /**
+     * @param authorization the value of the Authorization header, or null if none should be set
+     */
+    public ResolvedEndpoint(String targetUrl, String authorization) {
+        this(targetUrl, authorization, null);
+    }
+
+    /**
+     * @param targetKey the identity of the target, see {@link #getTargetKey()}
+     */
+    public ResolvedEndpoint(String targetUrl, String authorization, String targetKey) {
+        this(targetUrl, authorization, targetKey, null, null);
+    }
+
+    private ResolvedEndpoint(String targetUrl, String authorization, String targetKey,
+            Class<? extends Exception> failureType, String failureMessage) {
+        this.targetUrl = targetUrl;
+        this.authorization = authorization;
+        this.targetKey = targetKey;
+        this.failureType = failureType;
+        this.failureMessage = failureMessage;
+    }
+
+    /**
+     * Keeps the verdict of a failed resolution. The insecure targets, the unreachable ones and the invalid ones are
+     * told apart, any other failure makes the target invalid.
+     */
+    static ResolvedEndpoint failed(Exception failure) {
+        Class<? extends Exception> failureType;
+        if (failure instanceof ProtocolException) {
+            failureType = ProtocolException.class;
+        } else if (failure instanceof IOException) {
+            failureType = IOException.class;
+        } else {
+            failureType = IllegalArgumentException.class;
+        }
+        return new ResolvedEndpoint(null, null, null, failureType, failure.getMessage());
+    }
+
+    public String getTargetUrl() {
+        return targetUrl;
+    }
+
+    public String getAuthorization() {
+        return authorization;
+    }
+
+    /**
+     * @return the identity of the target the messages can be grouped by, i.e. the URL, the trust mode and the token.
+     */
+    public String getTargetKey() {
+        return targetKey;
+    }
+
+    public boolean isFailed() {
+        return failureType != null;
+    }
+
+    /**
+     * @return a new exception for the failure of the resolution.
+     */
+    Exception newFailure() {
+        if (failureType == ProtocolException.class) {
+            return new ProtocolException(failureMessage);
+        } else if (failureType == IOException.class) {
+            return new IOException(failureMessage);
+        }
+        return new IllegalArgumentException(failureMessage);
+    }
+
+    /**
+     * Sets the target URL and key properties and the Authorization header, or throws the failure of the resolution.
+     */
+    public void apply(Exchange exchange) throws Exception {
+        if (failureType != null) {
+            throw newFailure();
+        }
+
+        exchange.setProperty(TARGET_URL, targetUrl);
+        exchange.setProperty(TARGET_KEY, targetKey);
+        if (authorization != null) {
+            exchange.getIn().setHeader("Authorization", authorization);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.redhat.console.integrations;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.util.json.JsonObject;
+
+/**
+ * Resolves the target of a message (see {@link ResolvedEndpoint}) and caches it by URL, token and trust mode, so that
+ * repeated messages to the same target skip the URL validation and cleaning and the computation of the Authorization
+ * header. The URL is validated by the cache, the rest of the resolution is specific to each integration. The verdicts
+ * of the failures are cached as well.
+ *
+ * The cache holds at most maxSize targets, the least recently used being evicted first, and each of them for ttl
+ * milliseconds. The token is only kept as a hash in the key.
+ */
+public class ResolvedEndpointCache implements Processor {
+
+    @FunctionalInterface
+    public interface Resolver {
+        ResolvedEndpoint resolve(String targetUrl, String token) throws Exception;
+    }
+
+    private final long ttl;
+    private final Resolver resolver;
+    private final Map<String, CachedEndpoint> endpoints;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public ResolvedEndpointCache(String name, int maxSize, long ttl, Resolver resolver) {
+        this.ttl = ttl;
+        this.resolver = resolver;
+        this.endpoints = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEndpoint> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        Tags tags = Tags.of("cache", name);
+        this.hits = Metrics.counter("integrations.endpoint.cache.requests", tags.and("result", "hit"));
+        this.misses = Metrics.counter("integrations.endpoint.cache.requests", tags.and("result", "miss"));
+        Metrics.gauge("integrations.endpoint.cache.size", tags, endpoints, this::size);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        JsonObject metadata = exchange.getIn().getHeader("metadata", JsonObject.class);
+        if (metadata == null) {
+            // no target URL either
+            throw new IllegalArgumentException("URL Validation failed");
+        }
+        String targetUrl = exchange.getProperty(ResolvedEndpoint.TARGET_URL, String.class);
+        String token = metadata.getString("X-Insight-Token");
+        boolean trustAll = "true".equals(metadata.getString("trustAll"));
+
+        resolve(targetUrl, token, trustAll, System.currentTimeMillis()).apply(exchange);
+    }
+
+    ResolvedEndpoint resolve(String targetUrl, String token, boolean trustAll, long now) throws Exception {
+        String tokenHash = hash(token);
+        String key = targetUrl + "|" + trustAll + "|" + tokenHash;
+
+        CachedEndpoint cached;
+        synchronized (endpoints) {
+            cached = endpoints.get(key);
+        }
+        if (cached != null && cached.expiresAt > now) {
+            hits.increment();
+            return cached.endpoint;
+        }
+        misses.increment();
+
+        ResolvedEndpoint endpoint;
+        try {
+            TargetUrlValidator.validate(targetUrl);
+            ResolvedEndpoint resolved = resolver.resolve(targetUrl, token);
+            endpoint = new ResolvedEndpoint(resolved.getTargetUrl(), resolved.getAuthorization(),
+                    resolved.getTargetUrl() + "|" + trustAll + "|" + tokenHash);
+        } catch (Exception e) {
+            endpoint = ResolvedEndpoint.failed(e);
+        }
+
+        synchronized (endpoints) {
+            endpoints.put(key, new CachedEndpoint(endpoint, now + ttl));
+        }
+        return endpoint;
+    }
+
+    private int size(Map<String, CachedEndpoint> endpoints) {
+        synchronized (endpoints) {
+            return endpoints.size();
+        }
+    }
+
+    private static String hash(String token) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] tokenHash = digest.digest((token == null ? "" : token).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(tokenHash);
+    }
+
+    private static class CachedEndpoint {
+        final ResolvedEndpoint endpoint;
+        final long expiresAt;
+
+        CachedEndpoint(ResolvedEndpoint endpoint, long expiresAt) {
+            this.endpoint = endpoint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+
+/**
+ * Times the stages an event goes through, on the monotonic clock within this process:
+ * <ul>
+ * <li>broker: from the timestamp of the Kafka record to its reception, the only stage timed on the wall clock</li>
+ * <li>ingress: from the reception of the record to the integration handler</li>
+ * <li>handler: from the handler to the first request sent to the target, batching and coalescing included</li>
+ * <li>response: from a request sent to the target to its successful response</li>
+ * </ul>
+ * The end-to-end latency, from the timestamp of the Kafka record to the history record, is timed for each event once
+ * the outcome of its delivery is known, coalesced events included.
+ *
+ * The durations are exported as histograms, and kept in milliseconds in the {@link #STAGES} exchange property so that
+ * they can be added to the history record. The array in the property is replaced rather than changed, as the copies
+ * of an exchange share its properties. The events received from the retry topics or replayed from the spool are
+ * only timed from the handler on.
+ */
+public class StageTimer {
+
+    public static final String TIME_IN = "timeIn";
+    public static final String RECORD_TIMESTAMP = "recordTimestamp";
+    public static final String STAGES = "stageDurations";
+    public static final String STAGE_NANOS = "stageNanos";
+
+    public static final int BROKER = 0;
+    public static final int INGRESS = 1;
+    public static final int HANDLER = 2;
+    public static final int RESPONSE = 3;
+    public static final String[] STAGE_NAMES = { "broker", "ingress", "handler", "response" };
+
+    private static final Timer[] TIMERS = new Timer[STAGE_NAMES.length];
+    private static final Timer END_TO_END = timer("integrations.latency.end-to-end", null);
+
+    static {
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            TIMERS[stage] = timer("integrations.latency.stage", STAGE_NAMES[stage]);
+        }
+    }
+
+    /**
+     * Starts timing the Kafka record received on the ingress route.
+     */
+    public static void ingress(Exchange exchange) {
+        Long timestamp = exchange.getIn().getHeader(KafkaConstants.TIMESTAMP, Long.class);
+        if (timestamp != null) {
+            exchange.setProperty(RECORD_TIMESTAMP, timestamp);
+            record(exchange, BROKER, TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - timestamp)));
+        }
+        exchange.setProperty(STAGE_NANOS, System.nanoTime());
+    }
+
+    /**
+     * Marks the event as received by the integration handler, which is where the duration of its delivery starts.
+     */
+    public static void handler(Exchange exchange) {
+        exchange.setProperty(TIME_IN, System.currentTimeMillis());
+        mark(exchange, INGRESS);
+    }
+
+    /**
+     * Marks a request as sent to the target, the handler stage ends with the first one.
+     */
+    public static void send(Exchange exchange) {
+        if (durations(exchange)[HANDLER] < 0) {
+            mark(exchange, HANDLER);
+        } else {
+            exchange.setProperty(STAGE_NANOS, System.nanoTime());
+        }
+    }
+
+    /**
+     * Marks the successful response of the target to the request sent last.
+     */
+    public static void response(Exchange exchange) {
+        mark(exchange, RESPONSE);
+    }
+
+    /**
+     * Times the end-to-end latency of the event of the exchange once its outcome is known.
+     *
+     * @return the end-to-end latency in milliseconds, or -1 if the timestamp of its Kafka record is unknown.
+     */
+    public static long complete(Exchange exchange) {
+        return complete(exchange.getProperty(RECORD_TIMESTAMP, Long.class));
+    }
+
+    /**
+     * Times the end-to-end latency of an event, e.g. a coalesced one, once its outcome is known.
+     *
+     * @param timestamp the timestamp of the Kafka record of the event, or null if unknown
+     * @return the end-to-end latency in milliseconds, or -1 if the timestamp is unknown.
+     */
+    public static long complete(Long timestamp) {
+        if (timestamp == null) {
+            return -1;
+        }
+        long latency = Math.max(0, System.currentTimeMillis() - timestamp);
+        END_TO_END.record(latency, TimeUnit.MILLISECONDS);
+        return latency;
+    }
+
+    /**
+     * @return the durations of the stages in milliseconds, by stage, -1 for the stages that were not timed, not to be
+     *         changed.
+     */
+    public static long[] durations(Exchange exchange) {
+        long[] durations = exchange.getProperty(STAGES, long[].class);
+        if (durations == null) {
+            durations = new long[STAGE_NAMES.length];
+            Arrays.fill(durations, -1);
+            exchange.setProperty(STAGES, durations);
+        }
+        return durations;
+    }
+
+    private static void mark(Exchange exchange, int stage) {
+        long now = System.nanoTime();
+        Long start = exchange.getProperty(STAGE_NANOS, Long.class);
+        if (start != null) {
+            record(exchange, stage, now - start);
+        }
+        exchange.setProperty(STAGE_NANOS, now);
+    }
+
+    private static void record(Exchange exchange, int stage, long nanos) {
+        TIMERS[stage].record(nanos, TimeUnit.NANOSECONDS);
+        // the copies of the exchange keep their own durations
+        long[] durations = durations(exchange).clone();
+        durations[stage] = TimeUnit.NANOSECONDS.toMillis(nanos);
+        exchange.setProperty(STAGES, durations);
+    }
+
+    private static Timer timer(String name, String stage) {
+        Timer.Builder builder = Timer.builder(name).publishPercentileHistogram();
+        if (stage != null) {
+            builder.tag("stage", stage);
+        }
+        return builder.register(Metrics.globalRegistry);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.Processor;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.support.SynchronizationAdapter;
+
+/**
+ * Circuit breaker per target URL. After failureThreshold consecutive deliveries failed because the target is
+ * unavailable (I/O error, timeout, 429 or 5xx), the circuit opens and the deliveries to that target fail right away
+ * with a {@link CircuitBreakerOpenException} rather than waiting for the timeouts. After openDuration milliseconds,
+ * up to halfOpenTrials deliveries are let through: the circuit closes on the first success and opens again on the
+ * first failure. Other failures (e.g. 4xx) show that the target is up and count as successes, and the deliveries
+ * rejected by this application (see {@link DeliveryRejectedException}) don't count at all, giving their half-open
+ * trial back.
+ *
+ * The circuits unused for idleExpiry milliseconds are dropped. The number of circuits in each state is exported as a
+ * gauge, with the "state" tag, and the state of the busiest target hosts of the {@link DeliveryMetrics} as another
+ * gauge: 0 when closed, 1 when half-open and 2 when open, the worst circuit of the host winning.
+ */
+public class TargetCircuitBreaker implements Processor {
+
+    // ordered from the best to the worst
+    enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final int halfOpenTrials;
+    private final long idleExpiry;
+    private final DeliveryMetrics deliveryMetrics;
+
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final Counter rejected;
+    private volatile long expiredAt = System.currentTimeMillis();
+
+    /**
+     * @param failureThreshold the number of consecutive failures opening the circuit, 0 disables the breaker
+     */
+    public TargetCircuitBreaker(int failureThreshold, long openDuration, int halfOpenTrials, long idleExpiry,
+            DeliveryMetrics deliveryMetrics) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenTrials = halfOpenTrials;
+        this.idleExpiry = idleExpiry;
+        this.deliveryMetrics = deliveryMetrics;
+
+        this.rejected = Metrics.counter("integrations.circuit-breaker.rejected");
+        for (State state : State.values()) {
+            Metrics.gauge("integrations.circuit-breaker.circuits", Tags.of("state", state.name().toLowerCase()),
+                    circuits, c -> c.values().stream().filter(circuit -> circuit.state == state).count());
+        }
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        if (failureThreshold <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        expireIdleCircuits(now);
+
+        String targetUrl = exchange.getProperty("targetUrl", String.class);
+        Circuit circuit = circuits.computeIfAbsent(targetUrl, key -> new Circuit(DeliveryMetrics.host(key)));
+        registerStateGauge(circuit.host);
+
+        if (!circuit.tryAcquire(now)) {
+            rejected.increment();
+            throw new CircuitBreakerOpenException("Delivery skipped, " + targetUrl + " is unavailable (circuit breaker open)");
+        }
+
+        exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange exchange) {
+                Exception exception = exchange.getException() != null
+                        ? exchange.getException()
+                        : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+                if (exception instanceof DeliveryRejectedException) {
+                    // the target was not reached
+                    circuit.release(System.currentTimeMillis());
+                } else {
+                    circuit.record(isUnavailable(exception), System.currentTimeMillis());
+                }
+                registerStateGauge(circuit.host);
+            }
+        });
+    }
+
+    State getState(String targetUrl) {
+        Circuit circuit = circuits.get(targetUrl);
+        return circuit == null ? State.CLOSED : circuit.state;
+    }
+
+    int getCircuitCount() {
+        return circuits.size();
+    }
+
+    /**
+     * @return the worst state of the circuits of the given host.
+     */
+    State getHostState(String host) {
+        State worst = State.CLOSED;
+        for (Circuit circuit : circuits.values()) {
+            if (circuit.host.equals(host) && circuit.state.compareTo(worst) > 0) {
+                worst = circuit.state;
+            }
+        }
+        return worst;
+    }
+
+    static boolean isUnavailable(Exception exception) {
+        if (exception instanceof DeliveryRejectedException) {
+            // rejected before reaching the target
+            return false;
+        } else if (exception instanceof HttpOperationFailedException) {
+            int statusCode = ((HttpOperationFailedException) exception).getStatusCode();
+            return statusCode == 429 || statusCode >= 500;
+        }
+        return exception instanceof IOException || exception instanceof TimeoutException;
+    }
+
+    private void registerStateGauge(String host) {
+        // only registered for the busiest hosts, and removed along with their other series
+        deliveryMetrics.gauge("integrations.circuit-breaker.state", host, () -> getHostState(host).ordinal());
+    }
+
+    private void expireIdleCircuits(long now) {
+        // at most once per idle expiry
+        if (now - expiredAt < idleExpiry) {
+            return;
+        }
+        expiredAt = now;
+        circuits.values().removeIf(circuit -> circuit.isIdle(now - idleExpiry));
+    }
+
+    private class Circuit {
+
+        private final String host;
+        private volatile State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private int trials;
+        private long usedAt;
+
+        Circuit(String host) {
+            this.host = host;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            usedAt = now;
+            if (state == State.OPEN && now - openedAt >= openDuration) {
+                state = State.HALF_OPEN;
+                trials = 0;
+            }
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    return trials++ < halfOpenTrials;
+                default:
+                    return false;
+            }
+        }
+
+        synchronized boolean isIdle(long since) {
+            return usedAt < since;
+        }
+
+        synchronized void release(long now) {
+            usedAt = now;
+            if (state == State.HALF_OPEN && trials > 0) {
+                trials--;
+            }
+        }
+
+        synchronized void record(boolean failed, long now) {
+            usedAt = now;
+            if (failed) {
+                consecutiveFailures++;
+                if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                    state = State.OPEN;
+                    openedAt = now;
+                }
+            } else {
+                consecutiveFailures = 0;
+                if (state == State.HALF_OPEN) {
+                    state = State.CLOSED;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Token bucket rate limiter per target URL, which the targets themselves tighten: a target is not limited until it
+ * answers 429 (or 503 with a Retry-After header). Its requests are then paused for the time given by the Retry-After
+ * header and limited to throttledRate requests per second, halved on every new 429, and raised by 5% on every
+ * success up to throttledRate again. The limit is lifted after recoveryPeriod milliseconds without 429.
+ *
+ * A request which has to wait for its turn is deferred without holding a thread, and carries on from the resume
+ * executor once its turn comes. It fails with a {@link DeliveryDeferredException} if it would have to wait for more
+ * than maxDelay milliseconds, so that it is retried or spooled instead, not before its turn. A throttled request is
+ * retried once its turn comes, up to maxAttempts times, see {@link #onThrottled(Exchange)}.
+ *
+ * The time requests were deferred and the number of deferred requests are exported.
+ */
+public class TargetRateLimiter extends AsyncProcessorSupport {
+
+    public static final String THROTTLED_ATTEMPTS = "throttledAttempts";
+    // the total time in milliseconds the requests of the exchange were deferred
+    public static final String DEFERRED_TIME = "rateLimitDeferredTime";
+
+    private static final double RECOVERY_FACTOR = 1.05;
+
+    private final double throttledRate;
+    private final double minRate;
+    private final long recoveryPeriod;
+    private final long maxDelay;
+    private final int maxAttempts;
+    private final ScheduledExecutorService scheduler;
+    private final Executor resumeExecutor;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final Counter deferred;
+    private final Timer throttled;
+
+    public TargetRateLimiter(double throttledRate, double minRate, long recoveryPeriod, long maxDelay, int maxAttempts,
+            ScheduledExecutorService scheduler, Executor resumeExecutor) {
+        this.throttledRate = throttledRate;
+        this.minRate = minRate;
+        this.recoveryPeriod = recoveryPeriod;
+        this.maxDelay = maxDelay;
+        this.maxAttempts = maxAttempts;
+        this.scheduler = scheduler;
+        this.resumeExecutor = resumeExecutor;
+
+        this.deferred = Metrics.counter("integrations.rate-limit.deferred");
+        this.throttled = Metrics.timer("integrations.rate-limit.throttled");
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        String targetUrl = exchange.getProperty("targetUrl", String.class);
+        Bucket bucket = buckets.get(targetUrl);
+        long delay = bucket == null ? 0 : bucket.reserve(System.currentTimeMillis());
+
+        if (delay <= 0) {
+            callback.done(true);
+            return true;
+        }
+        if (delay > maxDelay) {
+            exchange.setException(
+                    new DeliveryDeferredException("Rate limited by " + targetUrl + " for " + delay + " ms", delay));
+            callback.done(true);
+            return true;
+        }
+
+        // the thread is given back, the request carries on once its turn comes
+        deferred.increment();
+        throttled.record(delay, TimeUnit.MILLISECONDS);
+        exchange.setProperty(DEFERRED_TIME, exchange.getProperty(DEFERRED_TIME, 0L, Long.class) + delay);
+        scheduler.schedule(() -> resumeExecutor.execute(() -> callback.done(false)), delay, TimeUnit.MILLISECONDS);
+        return false;
+    }
+
+    /**
+     * Whether the caught exception shows that the target throttles the requests.
+     */
+    public static boolean isThrottled(Exchange exchange) {
+        Exception exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        if (!(exception instanceof HttpOperationFailedException)) {
+            return false;
+        }
+        HttpOperationFailedException httpException = (HttpOperationFailedException) exception;
+        return httpException.getStatusCode() == 429
+               || (httpException.getStatusCode() == 503 && getRetryAfter(httpException) != null);
+    }
+
+    /**
+     * Tightens the limit of the target after a throttled request, which is to be sent again once its turn comes. Throws
+     * the caught exception again once the request has been throttled maxAttempts times.
+     */
+    public void onThrottled(Exchange exchange) throws Exception {
+        HttpOperationFailedException exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT,
+                HttpOperationFailedException.class);
+        long now = System.currentTimeMillis();
+
+        buckets.computeIfAbsent(exchange.getProperty("targetUrl", String.class), url -> new Bucket())
+                .throttle(now, parseRetryAfter(getRetryAfter(exception), now));
+
+        int attempts = exchange.getProperty(THROTTLED_ATTEMPTS, 0, Integer.class) + 1;
+        if (attempts >= maxAttempts) {
+            throw exception;
+        }
+        exchange.setProperty(THROTTLED_ATTEMPTS, attempts);
+        // the request is not failed, it is only deferred
+        exchange.removeProperty(Exchange.EXCEPTION_CAUGHT);
+    }
+
+    /**
+     * Lets the limit of the target recover after a successful request.
+     */
+    public void onSuccess(Exchange exchange) {
+        Bucket bucket = buckets.get(exchange.getProperty("targetUrl", String.class));
+        if (bucket != null && bucket.recover(System.currentTimeMillis())) {
+            buckets.remove(exchange.getProperty("targetUrl", String.class), bucket);
+        }
+    }
+
+    double getRate(String targetUrl) {
+        Bucket bucket = buckets.get(targetUrl);
+        return bucket == null ? 0 : bucket.rate;
+    }
+
+    private static String getRetryAfter(HttpOperationFailedException exception) {
+        Map<String, String> headers = exception.getResponseHeaders();
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if ("Retry-After".equalsIgnoreCase(header.getKey())) {
+                    return header.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the delay in milliseconds given by a Retry-After header, either in seconds or as an HTTP date, or 0.
+     */
+    static long parseRetryAfter(String retryAfter, long now) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(retryAfter.trim());
+            return date == null ? 0 : Math.max(0, date.getTime() - now);
+        }
+    }
+
+    private class Bucket {
+
+        private double rate;
+        private double tokens;
+        private long lastRefill;
+        private long pausedUntil;
+        private long lastThrottled;
+
+        synchronized void throttle(long now, long retryAfter) {
+            refill(now);
+            rate = rate == 0 ? throttledRate : Math.max(minRate, rate / 2);
+            // no burst right after being throttled
+            tokens = Math.min(tokens, 0);
+            pausedUntil = Math.max(pausedUntil, now + retryAfter);
+            lastThrottled = now;
+        }
+
+        /**
+         * Takes a token, possibly in advance, and returns how long to wait until it is actually available. No token is
+         * taken if that's longer than maxDelay, the request being rejected.
+         */
+        synchronized long reserve(long now) {
+            refill(now);
+            long start = Math.max(now, pausedUntil);
+            long wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1000 / rate);
+            long delay = start - now + wait;
+            if (delay <= maxDelay) {
+                tokens--;
+            }
+            return delay;
+        }
+
+        /**
+         * @return true if the target is no longer limited.
+         */
+        synchronized boolean recover(long now) {
+            rate = Math.min(throttledRate, rate * RECOVERY_FACTOR);
+            return now - lastThrottled >= recoveryPeriod;
+        }
+
+        private void refill(long now) {
+            // no tokens are earned while paused, and at most a second of them is kept
+            long elapsed = now - Math.max(lastRefill, pausedUntil);
+            if (elapsed > 0) {
+                tokens = Math.min(Math.max(1, rate), tokens + elapsed * rate / 1000);
+            }
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.quarkus.logging.Log;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+
+/**
+ * Spool on local disk of the events whose delivery failed because the target was unavailable, once their delayed
+ * retries are exhausted. The events are replayed in order, per target, once the target is back.
+ *
+ * Every target has its own directory of append-only segments of segmentSize bytes, which are memory-mapped. A record
+ * is made of its length, the CRC32 of its payload and the payload, which is the Kafka record the event was received
+ * with. The length is written last, and is negated once the event no longer has to be replayed. The appended records
+ * are forced to disk before the events are reported as spooled. A segment is unmapped and deleted once none of its
+ * events has to be replayed anymore. The segments take at most maxBytes bytes on disk in total, events are not spooled
+ * beyond.
+ *
+ * The spool is recovered from disk at startup with {@link #recover()}. A record that was not entirely written, or
+ * whose CRC32 doesn't match, ends its segment.
+ *
+ * Replays are throttled per target: {@link #replay()} hands out a single event at first, then twice as many events
+ * each time all the events handed out were delivered, up to replayBatch events, and only once none of the events
+ * handed out before is still in flight. A transient failure of a replayed event brings the target back to a single
+ * event. An event which was neither delivered nor failed after replayTimeout milliseconds is replayed again. The
+ * replays of a target are paused for as long as a delivery to it was deferred, see {@link DeliveryDeferredException}.
+ */
+public class TargetSpool {
+
+    public static final String SPOOLED = "spooledRecord";
+
+    private static final String TARGET_FILE = "target";
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final int HEADER_BYTES = 8;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final int replayBatch;
+    private final long replayTimeout;
+
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final Counter spooled;
+    private final Counter replayed;
+
+    public TargetSpool(boolean enabled, Path directory, int segmentSize, long maxBytes, int replayBatch,
+            long replayTimeout) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.replayBatch = replayBatch;
+        this.replayTimeout = replayTimeout;
+
+        this.spooled = Metrics.counter("integrations.spool.events", "operation", "spooled");
+        this.replayed = Metrics.counter("integrations.spool.events", "operation", "replayed");
+        Metrics.gauge("integrations.spool.bytes", usedBytes);
+        Metrics.gauge("integrations.spool.pending", targets,
+                t -> t.values().stream().mapToInt(Target::getLiveRecords).sum());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads the segments left on disk by a previous run.
+     */
+    public void recover() throws IOException {
+        if (!enabled || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> targetDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path targetDirectory : targetDirectories) {
+                Path targetFile = targetDirectory.resolve(TARGET_FILE);
+                if (!Files.exists(targetFile)) {
+                    continue;
+                }
+                String targetUrl = Files.readString(targetFile);
+                Target target = new Target(targetUrl, targetDirectory);
+                target.recover();
+                targets.put(targetUrl, target);
+                Log.infof("Recovered %d spooled events for %s", target.getLiveRecords(), targetUrl);
+            }
+        }
+    }
+
+    /**
+     * Keeps the events of a delivery that failed because the target was unavailable in the spool, new events are
+     * appended and replayed events stay where they are.
+     *
+     * @return false if the events could not be kept, in which case the failure is to be reported.
+     */
+    public boolean keep(Exchange exchange) {
+        Exception exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        if (!enabled || !(exception instanceof CircuitBreakerOpenException || exception instanceof DeliveryDeferredException
+                          || TargetCircuitBreaker.isUnavailable(exception))) {
+            return false;
+        }
+        // a deferred delivery is not replayed before its turn
+        long pausedUntil = exception instanceof DeliveryDeferredException
+                ? System.currentTimeMillis() + ((DeliveryDeferredException) exception).getDelay()
+                : 0;
+
+        List<String> records = new ArrayList<>();
+        List<SpooledRecord> replayedRecords = new ArrayList<>();
+        for (Event event : events(exchange)) {
+            if (event.spooled != null) {
+                replayedRecords.add(event.spooled);
+            } else if (event.record != null) {
+                records.add(event.record);
+            } else {
+                return false;
+            }
+        }
+
+        String targetUrl = exchange.getProperty("targetUrl", String.class);
+        if (!records.isEmpty()) {
+            Target target = targets.computeIfAbsent(targetUrl, url -> new Target(url, directory.resolve(hash(url))));
+            try {
+                target.append(records);
+            } catch (IOException e) {
+                Log.warnf("Events of %s not spooled: %s", targetUrl, e.getMessage());
+                return false;
+            }
+            target.pause(pausedUntil);
+            spooled.increment(records.size());
+        }
+        for (SpooledRecord record : replayedRecords) {
+            record.target.release(record);
+            record.target.pause(pausedUntil);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the replayed events of the exchange as done with, whether they were delivered or failed for good.
+     */
+    public void acknowledge(Exchange exchange) {
+        for (Event event : events(exchange)) {
+            if (event.spooled != null) {
+                event.spooled.target.acknowledge(event.spooled);
+            }
+        }
+    }
+
+    /**
+     * @return the next events to replay, for all the targets.
+     */
+    public List<SpooledRecord> replay() {
+        List<SpooledRecord> records = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Target target : targets.values()) {
+            target.replay(records, now);
+        }
+        replayed.increment(records.size());
+        return records;
+    }
+
+    /**
+     * Turns the exchange into the replay of the spooled event in its body, as if it had just been received.
+     */
+    public static void prepareReplay(Exchange exchange) {
+        Message in = exchange.getIn();
+        SpooledRecord record = in.getBody(SpooledRecord.class);
+        in.removeHeaders("*");
+        in.setBody(record.payload);
+        exchange.setProperty(SPOOLED, record);
+    }
+
+    int getLiveRecords(String targetUrl) {
+        Target target = targets.get(targetUrl);
+        return target == null ? 0 : target.getLiveRecords();
+    }
+
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Event> events(Exchange exchange) {
+        List<Event> events = new ArrayList<>();
+        List<CoalescedEvent> coalescedEvents = exchange.getProperty(COALESCED_EVENTS, List.class);
+        if (coalescedEvents != null) {
+            for (CoalescedEvent coalescedEvent : coalescedEvents) {
+                events.add(new Event(coalescedEvent.getRecord(), coalescedEvent.getSpooled()));
+            }
+        } else {
+            events.add(new Event(exchange.getProperty(DelayedRetry.RECORD, String.class),
+                    exchange.getProperty(SPOOLED, SpooledRecord.class)));
+        }
+        return events;
+    }
+
+    private static String hash(String targetUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(targetUrl.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Unmaps the buffer right away rather than once it is garbage collected. The buffer must not be used anymore.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // unmapped once garbage collected
+            Log.debugf(e, "Spool segment could not be unmapped");
+        }
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The Kafka record of a new event, or the spooled record of a replayed event.
+     */
+    private static class Event {
+        final String record;
+        final SpooledRecord spooled;
+
+        Event(String record, SpooledRecord spooled) {
+            this.record = record;
+            this.spooled = spooled;
+        }
+    }
+
+    /**
+     * An event handed out for replay.
+     */
+    public static class SpooledRecord {
+        private final Target target;
+        private final Segment segment;
+        private final int position;
+        private final String payload;
+
+        SpooledRecord(Target target, Segment segment, int position, String payload) {
+            this.target = target;
+            this.segment = segment;
+            this.position = position;
+            this.payload = payload;
+        }
+
+        String getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Segment {
+        final long sequence;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writePosition;
+        int liveRecords;
+        boolean deleted;
+
+        Segment(long sequence, Path path, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private class Target {
+        private final String targetUrl;
+        private final Path targetDirectory;
+        // oldest first
+        private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+        private Segment readSegment;
+        private int readPosition;
+        private int inFlight;
+        private long dispatchedAt;
+        private int batchSize = 1;
+        private long pausedUntil;
+
+        Target(String targetUrl, Path targetDirectory) {
+            this.targetUrl = targetUrl;
+            this.targetDirectory = targetDirectory;
+        }
+
+        synchronized int getLiveRecords() {
+            return segments.values().stream().mapToInt(segment -> segment.liveRecords).sum();
+        }
+
+        synchronized void recover() throws IOException {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(targetDirectory, "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    Segment segment = new Segment(sequence, file, map(file, false));
+                    usedBytes.addAndGet(segmentSize);
+                    scan(segment);
+                    segments.put(sequence, segment);
+                }
+            }
+            cleanup();
+        }
+
+        /**
+         * Reads the records of the segment up to the first one that was not entirely written.
+         */
+        private void scan(Segment segment) {
+            MappedByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while (position + HEADER_BYTES <= segmentSize) {
+                int length = buffer.getInt(position);
+                int size = Math.abs(length);
+                if (length == 0 || position + HEADER_BYTES + size > segmentSize) {
+                    break;
+                }
+                byte[] payload = new byte[size];
+                buffer.get(position + HEADER_BYTES, payload);
+                if (crc(payload) != buffer.getInt(position + 4)) {
+                    Log.warnf("Spool segment %s is torn at %d, its remaining records are dropped", segment.path,
+                            position);
+                    // the next records are appended over the torn one
+                    buffer.putInt(position, 0);
+                    break;
+                }
+                if (length > 0) {
+                    segment.liveRecords++;
+                }
+                position += HEADER_BYTES + size;
+            }
+            segment.writePosition = position;
+        }
+
+        synchronized void append(List<String> records) throws IOException {
+            List<byte[]> payloads = new ArrayList<>(records.size());
+            long bytes = 0;
+            for (String record : records) {
+                byte[] payload = record.getBytes(StandardCharsets.UTF_8);
+                if (HEADER_BYTES + payload.length > segmentSize) {
+                    throw new IOException("Event of " + payload.length + " bytes larger than a spool segment");
+                }
+                payloads.add(payload);
+                bytes += HEADER_BYTES + payload.length;
+            }
+            // all the events or none of them, assuming the worst case of a new segment for each of them
+            Segment tail = segments.isEmpty() ? null : segments.lastEntry().getValue();
+            long free = tail == null ? 0 : segmentSize - tail.writePosition;
+            if (bytes > free && usedBytes.get() + (long) segmentSize * payloads.size() > maxBytes) {
+                throw new IOException("Spool full");
+            }
+
+            Set<Segment> written = new LinkedHashSet<>();
+            for (byte[] payload : payloads) {
+                if (tail == null || tail.writePosition + HEADER_BYTES + payload.length > segmentSize) {
+                    tail = roll(tail);
+                }
+                written.add(tail);
+                int position = tail.writePosition;
+                tail.buffer.putInt(position + 4, crc(payload));
+                tail.buffer.put(position + HEADER_BYTES, payload);
+                // the length makes the record visible, so it is written last
+                tail.buffer.putInt(position, payload.length);
+                tail.writePosition += HEADER_BYTES + payload.length;
+                tail.liveRecords++;
+            }
+            // the events are only spooled once on disk
+            for (Segment segment : written) {
+                segment.buffer.force();
+            }
+        }
+
+        private Segment roll(Segment tail) throws IOException {
+            if (usedBytes.get() + segmentSize > maxBytes) {
+                throw new IOException("Spool full");
+            }
+            if (segments.isEmpty()) {
+                Files.createDirectories(targetDirectory);
+                Files.writeString(targetDirectory.resolve(TARGET_FILE), targetUrl);
+            }
+            long sequence = tail == null ? 0 : tail.sequence + 1;
+            Path path = targetDirectory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+            Segment segment = new Segment(sequence, path, map(path, true));
+            usedBytes.addAndGet(segmentSize);
+            segments.put(sequence, segment);
+            cleanup();
+            return segment;
+        }
+
+        private MappedByteBuffer map(Path path, boolean create) throws IOException {
+            try (FileChannel channel = create
+                    ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping stays valid once the channel is closed
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+        }
+
+        synchronized void pause(long until) {
+            pausedUntil = Math.max(pausedUntil, until);
+        }
+
+        synchronized void replay(List<SpooledRecord> records, long now) {
+            if (now < pausedUntil) {
+                return;
+            }
+            if (inFlight > 0) {
+                if (now - dispatchedAt < replayTimeout) {
+                    return;
+                }
+                // lost on the way, replayed again from the oldest event
+                inFlight = 0;
+                rewind();
+            }
+            if (readSegment == null) {
+                rewind();
+            }
+
+            while (readSegment != null && inFlight < batchSize) {
+                if (readPosition + HEADER_BYTES > readSegment.writePosition) {
+                    Map.Entry<Long, Segment> next = segments.higherEntry(readSegment.sequence);
+                    if (next == null) {
+                        break;
+                    }
+                    readSegment = next.getValue();
+                    readPosition = 0;
+                    continue;
+                }
+                int length = readSegment.buffer.getInt(readPosition);
+                int size = Math.abs(length);
+                if (length > 0) {
+                    byte[] payload = new byte[size];
+                    readSegment.buffer.get(readPosition + HEADER_BYTES, payload);
+                    records.add(new SpooledRecord(this, readSegment, readPosition,
+                            new String(payload, StandardCharsets.UTF_8)));
+                    inFlight++;
+                }
+                readPosition += HEADER_BYTES + size;
+            }
+            if (inFlight > 0) {
+                dispatchedAt = now;
+            }
+        }
+
+        synchronized void acknowledge(SpooledRecord record) {
+            // a record handed out twice whose segment was already deleted
+            int length = record.segment.deleted ? 0 : record.segment.buffer.getInt(record.position);
+            if (length > 0) {
+                record.segment.buffer.putInt(record.position, -length);
+                record.segment.liveRecords--;
+            }
+            inFlight = Math.max(0, inFlight - 1);
+            if (inFlight == 0) {
+                batchSize = Math.min(replayBatch, batchSize * 2);
+            }
+            cleanup();
+        }
+
+        synchronized void release(SpooledRecord record) {
+            inFlight = Math.max(0, inFlight - 1);
+            batchSize = 1;
+            rewind();
+        }
+
+        /**
+         * Replays again from the oldest event, the events already done with are skipped.
+         */
+        private void rewind() {
+            readSegment = segments.isEmpty() ? null : segments.firstEntry().getValue();
+            readPosition = 0;
+        }
+
+        /**
+         * Deletes the segments before the one being written whose events are all done with. They are unmapped first, as
+         * the disk space of a file that is still mapped is not freed.
+         */
+        private void cleanup() {
+            while (segments.size() > 1 && segments.firstEntry().getValue().liveRecords == 0) {
+                Segment segment = segments.pollFirstEntry().getValue();
+                segment.deleted = true;
+                unmap(segment.buffer);
+                try {
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    Log.warnf(e, "Spool segment %s could not be deleted", segment.path);
+                }
+                usedBytes.addAndGet(-segmentSize);
+                if (readSegment == segment) {
+                    rewind();
+                }
+            }
+        }
+    }
+}
@@ -7,18 +7,21 @@ import org.apache.http.ProtocolException;
 
 public class TargetUrlValidator implements Processor {
 
-    public void process(Exchange exchange) throws Exception {
-        String[] http_schemes = { "http" };
-        String[] https_schemes = { "https" };
-        UrlValidator httpUrlValidator = new UrlValidator(http_schemes, UrlValidator.ALLOW_LOCAL_URLS);
-        UrlValidator httpsUrlValidator = new UrlValidator(https_schemes, UrlValidator.ALLOW_LOCAL_URLS);
+    // validators are immutable and thread-safe
+    private static final UrlValidator HTTP_URL_VALIDATOR = new UrlValidator(new String[] { "http" },
+            UrlValidator.ALLOW_LOCAL_URLS);
+    private static final UrlValidator HTTPS_URL_VALIDATOR = new UrlValidator(new String[] { "https" },
+            UrlValidator.ALLOW_LOCAL_URLS);
 
-        String url = exchange.getProperty("targetUrl", String.class);
+    public void process(Exchange exchange) throws Exception {
+        validate(exchange.getProperty("targetUrl", String.class));
+    }
 
+    public static void validate(String url) throws ProtocolException {
         // we don't support http
-        if (httpUrlValidator.isValid(url)) {
+        if (HTTP_URL_VALIDATOR.isValid(url)) {
             throw new ProtocolException("Insecure protocol is not supported");
-        } else if (!httpsUrlValidator.isValid(url)) {
+        } else if (!HTTPS_URL_VALIDATOR.isValid(url)) {
             throw new IllegalArgumentException("URL Validation failed");
         }
     }
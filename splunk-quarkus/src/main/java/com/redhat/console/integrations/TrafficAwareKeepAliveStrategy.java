@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keeps connections alive for as long as the server allows with its "Keep-Alive: timeout=N" header, up to
+ * maxKeepAlive. When the server gives no hint, a connection to a target is kept alive for a few times the observed
+ * interval between the requests to that target, within minKeepAlive and maxKeepAlive, so that the next request
+ * usually finds it in the pool while rarely used targets don't hold connections for long.
+ *
+ * The traffic of a target is forgotten once no response came from it for a few times maxKeepAlive, its connections
+ * are long closed by then.
+ */
+public class TrafficAwareKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+    // weight of the latest interval in the moving average
+    private static final double SMOOTHING = 0.2;
+    // number of average intervals a connection is kept alive for
+    private static final int INTERVALS = 3;
+
+    private final long minKeepAlive;
+    private final long maxKeepAlive;
+
+    private final Map<String, Traffic> traffic = new ConcurrentHashMap<>();
+    private volatile long expiredAt;
+
+    public TrafficAwareKeepAliveStrategy(long minKeepAlive, long maxKeepAlive) {
+        this.minKeepAlive = minKeepAlive;
+        this.maxKeepAlive = maxKeepAlive;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+        long hint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return getKeepAliveDuration(target == null ? "" : target.toHostString(), hint, System.currentTimeMillis());
+    }
+
+    long getKeepAliveDuration(String target, long hint, long now) {
+        expireIdleTraffic(now);
+        long averageInterval = traffic.computeIfAbsent(target, t -> new Traffic()).observe(now);
+
+        if (hint > 0) {
+            return Math.min(hint, maxKeepAlive);
+        }
+        return Math.max(minKeepAlive, Math.min(maxKeepAlive, averageInterval * INTERVALS));
+    }
+
+    int getTargetCount() {
+        return traffic.size();
+    }
+
+    private void expireIdleTraffic(long now) {
+        long idleExpiry = maxKeepAlive * INTERVALS;
+        // at most once per idle expiry
+        if (now - expiredAt < idleExpiry) {
+            return;
+        }
+        expiredAt = now;
+        traffic.values().removeIf(t -> t.isIdle(now - idleExpiry));
+    }
+
+    private static class Traffic {
+
+        private long lastResponse;
+        private double averageInterval;
+
+        synchronized long observe(long now) {
+            if (lastResponse > 0) {
+                long interval = now - lastResponse;
+                averageInterval = averageInterval == 0 ? interval
+                        : SMOOTHING * interval + (1 - SMOOTHING) * averageInterval;
+            }
+            lastResponse = now;
+            return (long) averageInterval;
+        }
+
+        synchronized boolean isIdle(long since) {
+            return lastResponse < since;
+        }
+    }
+}
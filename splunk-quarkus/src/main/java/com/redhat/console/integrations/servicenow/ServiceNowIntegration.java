@@ -17,18 +17,24 @@
 package com.redhat.console.integrations.servicenow;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import com.redhat.console.integrations.BasicAuthenticationProcessor;
+import com.redhat.console.integrations.DeliveryMetrics;
+import com.redhat.console.integrations.HostBulkhead;
+import com.redhat.console.integrations.HttpConnectionPool;
 import com.redhat.console.integrations.IntegrationsRouteBuilder;
+import com.redhat.console.integrations.KafkaOffsetWatermark;
 import com.redhat.console.integrations.MigrationFilter;
-import com.redhat.console.integrations.TargetUrlValidator;
+import com.redhat.console.integrations.ResolvedEndpoint;
+import com.redhat.console.integrations.ResolvedEndpointCache;
+import com.redhat.console.integrations.StageTimer;
+import com.redhat.console.integrations.TargetCircuitBreaker;
+import com.redhat.console.integrations.TargetRateLimiter;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import org.apache.camel.Exchange;
-import org.apache.camel.component.http.HttpClientConfigurer;
 import org.apache.camel.http.base.HttpOperationFailedException;
 import org.apache.camel.http.common.HttpHeaderFilterStrategy;
 import org.apache.camel.model.dataformat.JsonLibrary;
@@ -45,9 +51,24 @@ import org.apache.http.auth.AuthenticationException;
 @ApplicationScoped
 public class ServiceNowIntegration extends IntegrationsRouteBuilder {
 
+    private static final String PENDING = "pushPending";
+
     @Inject
     MigrationFilter migrationFilter;
 
+    private final TargetCircuitBreaker circuitBreaker = newCircuitBreaker();
+    private final DeliveryMetrics deliveryMetrics = getDeliveryMetrics();
+
+    private final HttpConnectionPool connectionPool = newConnectionPool("servicenow", null, null);
+
+    private HostBulkhead hostBulkhead;
+    private TargetRateLimiter rateLimiter;
+
+    // Basic Auth with rh_insights_integration user and password from X-Insight-Token metadata
+    private final ResolvedEndpointCache endpointCache = newEndpointCache("servicenow",
+            (targetUrl, token) -> new ResolvedEndpoint(targetUrl, token == null || token.isEmpty() ? null
+                    : BasicAuthenticationProcessor.authorization("rh_insights_integration", token)));
+
     class ServiceNowHttpHeaderStrategy extends HttpHeaderFilterStrategy {
         @Override
         protected void initialize() {
@@ -63,6 +84,10 @@ public class ServiceNowIntegration extends IntegrationsRouteBuilder {
     @Override
     public void configure() throws Exception {
         super.configure();
+        hostBulkhead = newHostBulkhead();
+        rateLimiter = newTargetRateLimiter();
+        // the pool evicts its idle connections until the context stops
+        getContext().addService(connectionPool);
         configureHandler();
         configurePush();
     }
@@ -74,20 +99,20 @@ public class ServiceNowIntegration extends IntegrationsRouteBuilder {
                 // TODO For migration purposes
                 .filter(migrationFilter)
 
+                // the offset of the message is only committed once it is delivered
+                .process(KafkaOffsetWatermark::hold)
+
                 //Add properties useful for error reporting and metrics
                 .setProperty("targetUrl", simple("${headers.metadata[url]}"))
-                .setProperty("timeIn", simpleF("%d", System.currentTimeMillis()))
+                .process(StageTimer::handler)
 
                 // body is a JsonObject so converting to consumable object
                 // for the http producer
                 .marshal().json(JsonLibrary.Jackson)
 
                 // validate the TargetUrl to be a proper url
-                .process(new TargetUrlValidator())
-
-                // Set Basic Auth to Authorization header with rh_insights_integration user
-                // and password from X-Insight-Token metadata.
-                .process(new BasicAuthenticationProcessor("rh_insights_integration"))
+                // and set Basic Auth to Authorization header, both cached per target
+                .process(endpointCache)
 
                 .setHeader(Exchange.HTTP_URI, exchangeProperty("targetUrl"))
                 .to(seda("push"));
@@ -95,24 +120,34 @@ public class ServiceNowIntegration extends IntegrationsRouteBuilder {
 
     private void configurePush() {
         from(seda("push").concurrentConsumers(10))
-            .to(https("dynamic")
-                .httpMethod("POST")
-                .headerFilterStrategy(new ServiceNowHttpHeaderStrategy())
-                .advanced()
-                .httpClientConfigurer(getClientConfigurer()))
+            // fail right away when the target is known to be unavailable
+            .process(circuitBreaker)
+            // a slow host only gets its share of the delivery threads
+            .process(hostBulkhead)
+            // a throttled request is sent again once the target allows it
+            .setProperty(PENDING, constant(true))
+            .loopDoWhile(exchangeProperty(PENDING).isEqualTo(true))
+                // wait for the turn of the target if it throttles the requests
+                .process(rateLimiter)
+                .process(deliveryMetrics::request)
+                .process(StageTimer::send)
+                .doTry()
+                    .to(ASYNC_HTTP_ENABLED
+                        ? asyncHttps(new ServiceNowHttpHeaderStrategy(), false)
+                        : https("dynamic")
+                            .httpMethod("POST")
+                            .headerFilterStrategy(new ServiceNowHttpHeaderStrategy())
+                            .advanced()
+                            .clientConnectionManager(connectionPool.getConnectionManager())
+                            .httpClientConfigurer(connectionPool.getClientConfigurer()))
+                    .process(StageTimer::response)
+                    .setProperty(PENDING, constant(false))
+                    .process(rateLimiter::onSuccess)
+                .doCatch(HttpOperationFailedException.class)
+                    .onWhen(TargetRateLimiter::isThrottled)
+                    .process(rateLimiter::onThrottled)
+                .end()
+            .end()
             .to(direct("success"));
     }
-
-    protected HttpClientConfigurer getClientConfigurer() {
-        return (clientBuilder) -> {
-            // proactively evict expired connections from the connection pool using a background thread
-            clientBuilder.evictExpiredConnections();
-
-            // proactively evict idle connections from the connection pool after 5s using a background thread.
-            // Arguments set maximum time persistent connections can stay idle while kept alive in the connection pool.
-            // Connections whose inactivity period exceeds this value will get closed and evicted from the pool.
-            clientBuilder.evictIdleConnections(5L, TimeUnit.SECONDS);
-
-        };
-    }
 }
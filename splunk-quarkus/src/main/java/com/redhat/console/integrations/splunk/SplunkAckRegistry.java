@@ -0,0 +1,294 @@
+package com.redhat.console.integrations.splunk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.redhat.console.integrations.DeliveryRejectedException;
+import com.redhat.console.integrations.KafkaOffsetWatermark;
+import com.redhat.console.integrations.StageTimer;
+import com.redhat.console.integrations.TargetSpool;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.util.json.JsonArray;
+import org.apache.camel.util.json.JsonObject;
+import org.apache.camel.util.json.Jsoner;
+
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+import static com.redhat.console.integrations.OutgoingCloudEventBuilder.OUTCOME_EXCHANGE_PROPERTY;
+import static com.redhat.console.integrations.splunk.SplunkIntegration.TARGET_KEY;
+import static com.redhat.console.integrations.splunk.SplunkUrlCleaner.TARGET_URL;
+
+/**
+ * Keeps track of the requests sent to Splunk HEC in indexer acknowledgement mode. A 200 from HEC only means that the
+ * events were received, so such a delivery is only reported as successful once Splunk confirmed that all its events
+ * were indexed. Requests are sent on a channel per target and token, whose in-flight acknowledgements are bounded.
+ * The acknowledgements are polled in batches, one request per channel, off the delivery threads. The channels without
+ * pending acknowledgements that were not used for idleExpiry milliseconds are dropped.
+ */
+public class SplunkAckRegistry {
+
+    public static final String ACK_METADATA = "hecAck";
+    public static final String CHANNEL_HEADER = "X-Splunk-Request-Channel";
+    public static final String ACK_IDS = "hecAckIds";
+    public static final String SERVICES_COLLECTOR_ACK = "/services/collector/ack";
+
+    private static final String ACK_CHANNEL = "hecAckChannel";
+    private static final String TIME_IN = "timeIn";
+
+    private final boolean enabled;
+    private final int maxPendingPerChannel;
+    private final int maxAcksPerPoll;
+    private final long timeout;
+    private final long idleExpiry;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    public SplunkAckRegistry(boolean enabled, int maxPendingPerChannel, int maxAcksPerPoll, long timeout,
+            long idleExpiry) {
+        this.enabled = enabled;
+        this.maxPendingPerChannel = maxPendingPerChannel;
+        this.maxAcksPerPoll = maxAcksPerPoll;
+        this.timeout = timeout;
+        this.idleExpiry = idleExpiry;
+
+        Metrics.gauge("integrations.splunk.ack.pending", channels,
+                c -> c.values().stream().mapToInt(channel -> channel.pending.size()).sum());
+    }
+
+    /**
+     * Picks the channel of the target if the target uses indexer acknowledgement, and fails if that channel already has
+     * too many acknowledgements in flight.
+     */
+    public void prepare(Exchange exchange) throws IOException {
+        Message in = exchange.getIn();
+        JsonObject metadata = in.getHeader("metadata", JsonObject.class);
+        Object ack = metadata == null ? null : metadata.get(ACK_METADATA);
+        if (!(ack == null ? enabled : Boolean.parseBoolean(ack.toString()))) {
+            return;
+        }
+
+        // marked as used within the map, so that an idle channel is not dropped at the same time
+        Channel channel = channels.compute(exchange.getProperty(TARGET_KEY, String.class), (key, existing) -> {
+            Channel used = existing != null ? existing
+                    : new Channel(exchange.getProperty(TARGET_URL, String.class),
+                            in.getHeader("Authorization", String.class),
+                            metadata != null && "true".equals(metadata.getString("trustAll")));
+            used.usedAt = System.currentTimeMillis();
+            return used;
+        });
+        if (channel.pending.size() >= maxPendingPerChannel) {
+            throw new DeliveryRejectedException("Too many Splunk indexer acknowledgements pending on channel " + channel.id);
+        }
+
+        exchange.setProperty(ACK_CHANNEL, channel);
+        in.setHeader(CHANNEL_HEADER, channel.id);
+    }
+
+    /**
+     * Records the ackId returned by HEC for the chunk that was just sent. Nothing is recorded when the token doesn't
+     * have indexer acknowledgement enabled, the delivery is then successful as soon as HEC received it.
+     */
+    @SuppressWarnings("unchecked")
+    public static void recordAck(Exchange exchange) throws Exception {
+        if (exchange.getProperty(ACK_CHANNEL) == null) {
+            return;
+        }
+
+        String response = exchange.getIn().getBody(String.class);
+        if (response == null || response.isEmpty()) {
+            return;
+        }
+
+        Object ackId = ((JsonObject) Jsoner.deserialize(response)).get("ackId");
+        if (ackId != null) {
+            List<Long> ackIds = exchange.getProperty(ACK_IDS, List.class);
+            if (ackIds == null) {
+                ackIds = new ArrayList<>();
+                exchange.setProperty(ACK_IDS, ackIds);
+            }
+            ackIds.add(Long.valueOf(ackId.toString()));
+        }
+    }
+
+    /**
+     * Keeps the delivery aside until all its acknowledgements are confirmed.
+     */
+    @SuppressWarnings("unchecked")
+    public void register(Exchange exchange) {
+        Channel channel = exchange.getProperty(ACK_CHANNEL, Channel.class);
+        PendingDelivery delivery = new PendingDelivery(exchange, exchange.getProperty(ACK_IDS, List.class),
+                System.currentTimeMillis() + timeout);
+        for (Long ackId : delivery.ackIds) {
+            channel.pending.put(ackId, delivery);
+        }
+    }
+
+    /**
+     * @return one poll request per channel with pending acknowledgements.
+     */
+    public List<AckPoll> pollRequests() {
+        List<AckPoll> polls = new ArrayList<>();
+        for (Channel channel : channels.values()) {
+            if (!channel.pending.isEmpty()) {
+                List<Long> ackIds = new ArrayList<>();
+                for (Long ackId : channel.pending.keySet()) {
+                    ackIds.add(ackId);
+                    if (ackIds.size() == maxAcksPerPoll) {
+                        break;
+                    }
+                }
+                polls.add(new AckPoll(channel, ackIds));
+            }
+        }
+        return polls;
+    }
+
+    /**
+     * Turns the exchange into the ack request of the given poll.
+     */
+    public static void preparePoll(Exchange exchange) {
+        AckPoll poll = exchange.getIn().getBody(AckPoll.class);
+        Message in = exchange.getIn();
+
+        in.removeHeaders("*");
+        in.setHeader(Exchange.HTTP_URI, poll.channel.targetUrl);
+        in.setHeader(Exchange.HTTP_PATH, SERVICES_COLLECTOR_ACK);
+        in.setHeader(Exchange.HTTP_QUERY, "channel=" + poll.channel.id);
+        in.setHeader(Exchange.CONTENT_TYPE, "application/json");
+        in.setHeader("Authorization", poll.channel.authorization);
+        in.setHeader(CHANNEL_HEADER, poll.channel.id);
+        // the metadata header is what selects the trust all endpoint
+        JsonObject metadata = new JsonObject();
+        metadata.put("trustAll", Boolean.toString(poll.channel.trustAll));
+        in.setHeader("metadata", metadata);
+
+        JsonObject request = new JsonObject();
+        request.put("acks", new JsonArray(poll.ackIds));
+        in.setBody(request.toJson());
+
+        exchange.setProperty(ACK_CHANNEL, poll.channel);
+        exchange.setProperty(TARGET_URL, poll.channel.targetUrl);
+    }
+
+    /**
+     * Reads the ack response and returns the deliveries whose acknowledgements are now all confirmed.
+     */
+    public List<PendingDelivery> acknowledge(Exchange exchange) throws Exception {
+        Channel channel = exchange.getProperty(ACK_CHANNEL, Channel.class);
+        JsonObject response = (JsonObject) Jsoner.deserialize(exchange.getIn().getBody(String.class));
+        JsonObject acks = (JsonObject) response.get("acks");
+
+        List<PendingDelivery> delivered = new ArrayList<>();
+        if (acks != null) {
+            for (Map.Entry<String, Object> ack : acks.entrySet()) {
+                if (!Boolean.parseBoolean(String.valueOf(ack.getValue()))) {
+                    continue;
+                }
+                PendingDelivery delivery = channel.pending.remove(Long.valueOf(ack.getKey()));
+                if (delivery != null && delivery.acknowledge(Long.valueOf(ack.getKey()))) {
+                    delivered.add(delivery);
+                }
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Returns the deliveries that were not confirmed in time and forgets about them, and drops the idle channels.
+     */
+    public List<PendingDelivery> expire() {
+        long now = System.currentTimeMillis();
+        Set<PendingDelivery> expired = new HashSet<>();
+        for (Map.Entry<String, Channel> entry : channels.entrySet()) {
+            Channel channel = entry.getValue();
+            Iterator<PendingDelivery> deliveries = channel.pending.values().iterator();
+            while (deliveries.hasNext()) {
+                PendingDelivery delivery = deliveries.next();
+                if (delivery.deadline < now) {
+                    deliveries.remove();
+                    expired.add(delivery);
+                }
+            }
+            // the deliveries prepared on the channel register their acknowledgements well before it is idle
+            channels.computeIfPresent(entry.getKey(),
+                    (key, idle) -> idle.pending.isEmpty() && now - idle.usedAt >= idleExpiry ? null : idle);
+        }
+        return new ArrayList<>(expired);
+    }
+
+    int getChannelCount() {
+        return channels.size();
+    }
+
+    static class Channel {
+        final String id = UUID.randomUUID().toString();
+        final String targetUrl;
+        final String authorization;
+        final boolean trustAll;
+        final Map<Long, PendingDelivery> pending = new ConcurrentHashMap<>();
+        volatile long usedAt;
+
+        Channel(String targetUrl, String authorization, boolean trustAll) {
+            this.targetUrl = targetUrl;
+            this.authorization = authorization;
+            this.trustAll = trustAll;
+        }
+    }
+
+    public static class AckPoll {
+        final Channel channel;
+        final List<Long> ackIds;
+
+        AckPoll(Channel channel, List<Long> ackIds) {
+            this.channel = channel;
+            this.ackIds = ackIds;
+        }
+    }
+
+    /**
+     * What is needed to write the history record of a delivery once its acknowledgements are confirmed.
+     */
+    public static class PendingDelivery {
+        private final Map<String, Object> headers;
+        private final Map<String, Object> properties = new HashMap<>();
+        private final Set<Long> ackIds;
+        private final long deadline;
+
+        PendingDelivery(Exchange exchange, List<Long> ackIds, long deadline) {
+            this.headers = new HashMap<>(exchange.getIn().getHeaders());
+            this.headers.keySet().removeIf(name -> name.startsWith("Camel"));
+            for (String name : List.of(TARGET_URL, TIME_IN, COALESCED_EVENTS, TargetSpool.SPOOLED,
+                    KafkaOffsetWatermark.PENDING_OFFSET, StageTimer.RECORD_TIMESTAMP, StageTimer.STAGES,
+                    OUTCOME_EXCHANGE_PROPERTY)) {
+                Object value = exchange.getProperty(name);
+                if (value != null) {
+                    properties.put(name, value);
+                }
+            }
+            this.ackIds = new HashSet<>(ackIds);
+            this.deadline = deadline;
+        }
+
+        synchronized boolean acknowledge(Long ackId) {
+            return ackIds.remove(ackId) && ackIds.isEmpty();
+        }
+
+        /**
+         * Puts the headers and properties of the original delivery back on the exchange.
+         */
+        public static void restore(Exchange exchange) {
+            PendingDelivery delivery = exchange.getIn().getBody(PendingDelivery.class);
+            exchange.getIn().setHeaders(delivery.headers);
+            exchange.getProperties().putAll(delivery.properties);
+        }
+    }
+}
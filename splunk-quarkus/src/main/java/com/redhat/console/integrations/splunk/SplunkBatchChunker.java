@@ -0,0 +1,146 @@
+package com.redhat.console.integrations.splunk;
+
+import java.util.List;
+
+import com.redhat.console.integrations.DeliveryMetrics;
+import com.redhat.console.integrations.EventBatch;
+import com.redhat.console.integrations.TargetRateLimiter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.util.json.JsonObject;
+
+import static com.redhat.console.integrations.OutgoingCloudEventBuilder.OUTCOME_EXCHANGE_PROPERTY;
+
+/**
+ * Splits the batch to send into chunks that a Splunk HEC accepts, so that a large batch doesn't fail as a whole with a
+ * 413. The byte and event ceilings can be overridden per target with the "hecMaxBytes" and "hecMaxEvents" metadata.
+ * The chunks are stored in the {@link #CHUNKS} exchange property, and each of them is then sent independently, the
+ * index of the chunk to send being kept in the {@link #CHUNK_INDEX} exchange property. Once a chunk was accepted, the
+ * batch is no longer sent again as a whole, a later failure being reported as a partial delivery.
+ */
+public class SplunkBatchChunker implements Processor {
+
+    public static final String CHUNKS = "hecChunks";
+    public static final String CHUNKS_COUNT = "hecChunksCount";
+    public static final String CHUNK_INDEX = "hecChunkIndex";
+    public static final String MAX_BYTES_METADATA = "hecMaxBytes";
+    public static final String MAX_EVENTS_METADATA = "hecMaxEvents";
+
+    private final int maxBytes;
+    private final int maxEvents;
+
+    private final DistributionSummary requestBytes;
+    private final DistributionSummary requestEvents;
+
+    public SplunkBatchChunker(int maxBytes, int maxEvents) {
+        this.maxBytes = maxBytes;
+        this.maxEvents = maxEvents;
+
+        this.requestBytes = DistributionSummary.builder("integrations.splunk.request.bytes")
+                .description("Size of the bodies sent to Splunk HEC")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+        this.requestEvents = DistributionSummary.builder("integrations.splunk.request.events")
+                .description("Number of events sent to Splunk HEC per request")
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Message in = exchange.getIn();
+        EventBatch batch = in.getBody(EventBatch.class);
+
+        JsonObject metadata = in.getHeader("metadata", JsonObject.class);
+        List<EventBatch> chunks = batch.split(
+                getLimit(metadata, MAX_BYTES_METADATA, maxBytes),
+                getLimit(metadata, MAX_EVENTS_METADATA, maxEvents));
+
+        for (EventBatch chunk : chunks) {
+            requestBytes.record(chunk.size());
+            requestEvents.record(chunk.getEventCount());
+        }
+
+        exchange.setProperty(CHUNKS, chunks);
+        exchange.setProperty(CHUNKS_COUNT, chunks.size());
+        exchange.setProperty(CHUNK_INDEX, 0);
+    }
+
+    /**
+     * Whether some chunks are still to be sent.
+     */
+    public static boolean hasNextChunk(Exchange exchange) {
+        return exchange.getProperty(CHUNK_INDEX, Integer.class) < exchange.getProperty(CHUNKS_COUNT, Integer.class);
+    }
+
+    /**
+     * Sets the chunk to send as the body. The chunk is materialized only then, right before being sent.
+     */
+    @SuppressWarnings("unchecked")
+    public static void pickChunk(Exchange exchange) {
+        List<EventBatch> chunks = exchange.getProperty(CHUNKS, List.class);
+        int index = exchange.getProperty(CHUNK_INDEX, Integer.class);
+
+        exchange.getIn().setBody(chunks.get(index).toByteArray());
+        exchange.setProperty(DeliveryMetrics.REQUEST_EVENTS, chunks.get(index).getEventCount());
+    }
+
+    /**
+     * Moves on to the next chunk once the current one was sent. The next chunk may be throttled as many times as the
+     * previous ones.
+     */
+    public static void nextChunk(Exchange exchange) {
+        exchange.setProperty(CHUNK_INDEX, exchange.getProperty(CHUNK_INDEX, Integer.class) + 1);
+        exchange.removeProperty(TargetRateLimiter.THROTTLED_ATTEMPTS);
+    }
+
+    /**
+     * Whether some chunks were already accepted by the target, the batch must then not be sent again as a whole.
+     */
+    public static boolean isPartiallySent(Exchange exchange) {
+        Integer index = exchange.getProperty(CHUNK_INDEX, Integer.class);
+        return index != null && index > 0;
+    }
+
+    /**
+     * Sets the outcome of a delivery that failed after some chunks were accepted, telling how many of its events were
+     * delivered.
+     */
+    @SuppressWarnings("unchecked")
+    public static void describePartialDelivery(Exchange exchange) {
+        List<EventBatch> chunks = exchange.getProperty(CHUNKS, List.class);
+        int index = exchange.getProperty(CHUNK_INDEX, Integer.class);
+        Exception exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+
+        int deliveredEvents = 0;
+        int events = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            if (i < index) {
+                deliveredEvents += chunks.get(i).getEventCount();
+            }
+            events += chunks.get(i).getEventCount();
+        }
+        exchange.setProperty(OUTCOME_EXCHANGE_PROPERTY, String.format(
+                "Partially delivered, %d of %d events were accepted by Splunk (%d of %d requests) before: %s",
+                deliveredEvents, events, index, chunks.size(), exception == null ? null : exception.getMessage()));
+    }
+
+    static int getLimit(JsonObject metadata, String key, int defaultLimit) {
+        Object value = metadata == null ? null : metadata.get(key);
+        if (value != null) {
+            try {
+                int limit = Integer.parseInt(value.toString());
+                if (limit > 0) {
+                    return limit;
+                }
+            } catch (NumberFormatException e) {
+                // ignored, the default limit is used
+            }
+        }
+        return defaultLimit;
+    }
+}
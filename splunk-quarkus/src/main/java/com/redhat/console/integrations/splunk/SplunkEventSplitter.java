@@ -0,0 +1,74 @@
+package com.redhat.console.integrations.splunk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.util.json.JsonArray;
+import org.apache.camel.util.json.JsonObject;
+import org.apache.camel.util.json.Jsoner;
+
+/**
+ * Splits the events of an action into Splunk HEC events, each one wrapping a copy of the action that only contains
+ * that event. The action without its events is serialized once and every event is serialized once, so the work grows
+ * linearly with the number of events. The body is replaced by the list of wrapped events and the number of events is
+ * stored in the "eventsCount" exchange property.
+ */
+public class SplunkEventSplitter implements Processor {
+
+    public static final String EVENTS_COUNT = "eventsCount";
+
+    private static final String EVENTS = "events";
+    private static final String HEC_EVENT_PREFIX = "{\"source\": \"eventing\", \"sourcetype\": \"Insights event\", \"event\": ";
+    private static final String HEC_EVENT_SUFFIX = "]}}";
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+
+        Message in = exchange.getIn();
+        JsonObject action = in.getBody(JsonObject.class);
+
+        JsonArray events = action.getCollection(EVENTS);
+        if (events == null) {
+            events = new JsonArray();
+        }
+
+        List<String> hecEvents = split(action, events);
+
+        exchange.setProperty(EVENTS_COUNT, hecEvents.size());
+        in.setBody(hecEvents);
+    }
+
+    static List<String> split(JsonObject action, JsonArray events) {
+        if (events.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Serialize the action without its events once, then reopen it to append the "events" array.
+        JsonObject envelope = new JsonObject(action);
+        envelope.remove(EVENTS);
+        String envelopeJson = envelope.toJson();
+
+        StringBuilder prefixBuilder = new StringBuilder(HEC_EVENT_PREFIX.length() + envelopeJson.length() + 16)
+                .append(HEC_EVENT_PREFIX)
+                .append(envelopeJson, 0, envelopeJson.length() - 1);
+        if (!envelope.isEmpty()) {
+            prefixBuilder.append(',');
+        }
+        String prefix = prefixBuilder.append('"').append(EVENTS).append("\":[").toString();
+
+        List<String> hecEvents = new ArrayList<>(events.size());
+        for (Object event : events) {
+            String eventJson = Jsoner.serialize(event);
+            hecEvents.add(new StringBuilder(prefix.length() + eventJson.length() + HEC_EVENT_SUFFIX.length())
+                    .append(prefix)
+                    .append(eventJson)
+                    .append(HEC_EVENT_SUFFIX)
+                    .toString());
+        }
+        return hecEvents;
+    }
+}
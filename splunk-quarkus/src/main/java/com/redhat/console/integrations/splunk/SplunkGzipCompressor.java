@@ -0,0 +1,87 @@
+package com.redhat.console.integrations.splunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.util.json.JsonObject;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Gzip compresses the body sent to Splunk HEC, which accepts "Content-Encoding: gzip" requests. Compression is enabled
+ * globally, and can be switched on or off per target with the "hecGzip" metadata. Bodies smaller than the threshold
+ * are sent as they are, since compressing them would not pay off.
+ *
+ * The compressed body is wrapped in an entity carrying its encoding for the blocking HTTP client, while the
+ * non-blocking client gets the bytes along with a "Content-Encoding" header.
+ */
+public class SplunkGzipCompressor implements Processor {
+
+    public static final String GZIP_METADATA = "hecGzip";
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final boolean asEntity;
+
+    private final Counter uncompressedBytes;
+    private final Counter compressedBytes;
+
+    public SplunkGzipCompressor(boolean enabled, int minBytes) {
+        this(enabled, minBytes, true);
+    }
+
+    public SplunkGzipCompressor(boolean enabled, int minBytes, boolean asEntity) {
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.asEntity = asEntity;
+
+        this.uncompressedBytes = Metrics.counter("integrations.splunk.gzip.bytes", "stage", "before");
+        this.compressedBytes = Metrics.counter("integrations.splunk.gzip.bytes", "stage", "after");
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Message in = exchange.getIn();
+        byte[] body = in.getBody(byte[].class);
+        // left over from the previous chunk
+        in.removeHeader(Exchange.CONTENT_ENCODING);
+
+        if (body.length < minBytes || !isEnabled(in.getHeader("metadata", JsonObject.class))) {
+            return;
+        }
+
+        byte[] compressed = compress(body);
+        uncompressedBytes.increment(body.length);
+        compressedBytes.increment(compressed.length);
+
+        if (!asEntity) {
+            in.setHeader(Exchange.CONTENT_ENCODING, "gzip");
+            in.setBody(compressed);
+            return;
+        }
+
+        // The entity carries the encoding, the HTTP client turns it into the Content-Encoding header
+        ByteArrayEntity entity = new ByteArrayEntity(compressed, ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("gzip");
+        in.setBody(entity);
+    }
+
+    private boolean isEnabled(JsonObject metadata) {
+        Object value = metadata == null ? null : metadata.get(GZIP_METADATA);
+        return value == null ? enabled : Boolean.parseBoolean(value.toString());
+    }
+
+    static byte[] compress(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+}
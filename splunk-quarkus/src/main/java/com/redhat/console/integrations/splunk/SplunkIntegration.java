@@ -17,27 +17,37 @@
 package com.redhat.console.integrations.splunk;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import com.redhat.console.integrations.BatchCoalescer;
+import com.redhat.console.integrations.BoundedAggregationRepository;
+import com.redhat.console.integrations.DeliveryMetrics;
 import com.redhat.console.integrations.EventAppender;
-import com.redhat.console.integrations.EventPicker;
+import com.redhat.console.integrations.HostBulkhead;
+import com.redhat.console.integrations.HttpConnectionPool;
 import com.redhat.console.integrations.IntegrationsRouteBuilder;
+import com.redhat.console.integrations.KafkaOffsetWatermark;
 import com.redhat.console.integrations.MigrationFilter;
-import com.redhat.console.integrations.TargetUrlValidator;
+import com.redhat.console.integrations.ResolvedEndpoint;
+import com.redhat.console.integrations.ResolvedEndpointCache;
+import com.redhat.console.integrations.StageTimer;
+import com.redhat.console.integrations.TargetCircuitBreaker;
+import com.redhat.console.integrations.TargetRateLimiter;
+import com.redhat.console.integrations.splunk.SplunkAckRegistry.PendingDelivery;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import org.apache.camel.Exchange;
-import org.apache.camel.Processor;
-import org.apache.camel.component.http.HttpClientConfigurer;
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.EndpointProducerBuilder;
 import org.apache.camel.http.base.HttpOperationFailedException;
 import org.apache.camel.http.common.HttpHeaderFilterStrategy;
-import org.apache.camel.model.dataformat.JsonLibrary;
 import org.apache.camel.support.jsse.SSLContextParameters;
 import org.apache.camel.support.jsse.TrustManagersParameters;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 
+import static com.redhat.console.integrations.OutgoingCloudEventBuilder.OUTCOME_EXCHANGE_PROPERTY;
+
 /**
  * The main class that does the work setting up the Camel routes. Entry point for messages is below
  * 'from(kafka(kafkaIngressTopic))' Upon success/failure a message is returned to the kafkaReturnTopic topic.
@@ -55,9 +65,65 @@ import org.apache.http.conn.ssl.NoopHostnameVerifier;
 @ApplicationScoped
 public class SplunkIntegration extends IntegrationsRouteBuilder {
 
+    public static final String BATCH_ID = "batchId";
+    public static final String TARGET_KEY = ResolvedEndpoint.TARGET_KEY;
+
+    // Maximum time an incomplete batch is kept before being sent with the events it has
+    private static final long BATCH_COMPLETION_TIMEOUT = CONFIG.getValue("integrations.splunk.batch.completion-timeout",
+            Long.class);
+    // Maximum number of batches and of bytes held by them before incoming messages are refused
+    private static final int BATCH_MAX_OPEN = CONFIG.getValue("integrations.splunk.batch.max-open", Integer.class);
+    private static final long BATCH_MAX_BYTES = CONFIG.getValue("integrations.splunk.batch.max-bytes", Long.class);
+
+    // Opt-in coalescing of the batches of different messages going to the same target
+    private static final boolean COALESCING_ENABLED = CONFIG.getValue("integrations.splunk.coalescing.enabled",
+            Boolean.class);
+    private static final long COALESCING_LINGER = CONFIG.getValue("integrations.splunk.coalescing.linger", Long.class);
+    private static final int COALESCING_MAX_BYTES = CONFIG.getValue("integrations.splunk.coalescing.max-bytes",
+            Integer.class);
+    private static final int COALESCING_MAX_EVENTS = CONFIG.getValue("integrations.splunk.coalescing.max-events",
+            Integer.class);
+
+    // Maximum size of the HEC requests, larger batches are split
+    private static final int HEC_MAX_BYTES = CONFIG.getValue("integrations.splunk.hec.max-bytes", Integer.class);
+    private static final int HEC_MAX_EVENTS = CONFIG.getValue("integrations.splunk.hec.max-events", Integer.class);
+
+    // Gzip compression of the HEC requests larger than the threshold
+    private static final boolean GZIP_ENABLED = CONFIG.getValue("integrations.splunk.gzip.enabled", Boolean.class);
+    private static final int GZIP_MIN_BYTES = CONFIG.getValue("integrations.splunk.gzip.min-bytes", Integer.class);
+
+    // Indexer acknowledgement mode, the default can be overridden per target with the "hecAck" metadata
+    private static final boolean ACK_ENABLED = CONFIG.getValue("integrations.splunk.ack.enabled", Boolean.class);
+    private static final long ACK_POLL_INTERVAL = CONFIG.getValue("integrations.splunk.ack.poll-interval", Long.class);
+    private static final long ACK_TIMEOUT = CONFIG.getValue("integrations.splunk.ack.timeout", Long.class);
+    private static final int ACK_MAX_PENDING_PER_CHANNEL = CONFIG.getValue(
+            "integrations.splunk.ack.max-pending-per-channel", Integer.class);
+    private static final int ACK_MAX_PER_POLL = CONFIG.getValue("integrations.splunk.ack.max-per-poll", Integer.class);
+    private static final long ACK_IDLE_EXPIRY = CONFIG.getValue("integrations.splunk.ack.idle-expiry", Long.class);
+
     @Inject
     MigrationFilter migrationFilter;
 
+    private final BoundedAggregationRepository batchRepository = new BoundedAggregationRepository("splunk",
+            BATCH_MAX_OPEN, BATCH_MAX_BYTES);
+
+    private final SplunkAckRegistry ackRegistry = new SplunkAckRegistry(ACK_ENABLED, ACK_MAX_PENDING_PER_CHANNEL,
+            ACK_MAX_PER_POLL, ACK_TIMEOUT, ACK_IDLE_EXPIRY);
+
+    private final TargetCircuitBreaker circuitBreaker = newCircuitBreaker();
+    private final DeliveryMetrics deliveryMetrics = getDeliveryMetrics();
+
+    private final ResolvedEndpointCache endpointCache = newEndpointCache("splunk",
+            (targetUrl, token) -> new ResolvedEndpoint(SplunkUrlCleaner.clean(targetUrl),
+                    "Splunk " + (token == null ? "" : token)));
+
+    private HostBulkhead hostBulkhead;
+    private TargetRateLimiter rateLimiter;
+
+    // connections to the targets with and without certificate checks are pooled separately
+    private HttpConnectionPool connectionPool;
+    private HttpConnectionPool trustAllConnectionPool;
+
     class SplunkHttpHeaderStrategy extends HttpHeaderFilterStrategy {
         @Override
         protected void initialize() {
@@ -67,17 +133,32 @@ public class SplunkIntegration extends IntegrationsRouteBuilder {
             getInFilter().clear();
             getOutFilter().clear();
             getOutFilter().add("authorization");
+            getOutFilter().add("x-splunk-request-channel");
+            // only set when the non-blocking client sends an already compressed body
+            getOutFilter().add("content-encoding");
         }
     }
 
     @Override
     public void configure() throws Exception {
         super.configure();
+        hostBulkhead = newHostBulkhead();
+        rateLimiter = newTargetRateLimiter();
+        connectionPool = newConnectionPool("splunk", null, null);
+        trustAllConnectionPool = newConnectionPool("splunk-trust-all",
+                getTrustAllCACerts().createSSLContext(getContext()), NoopHostnameVerifier.INSTANCE);
+        // the pools evict their idle connections until the context stops
+        getContext().addService(connectionPool);
+        getContext().addService(trustAllConnectionPool);
         configureHandler();
+        if (COALESCING_ENABLED) {
+            configureCoalescing();
+        }
+        configureSend();
+        configureAckPoll();
     }
 
     private void configureHandler() {
-        Processor eventPicker = new EventPicker();
         // Receive messages on internal enpoint (within the same JVM)
         // named "splunk".
         from(direct("handler"))
@@ -86,6 +167,9 @@ public class SplunkIntegration extends IntegrationsRouteBuilder {
                 // TODO For migration purposes
                 .filter(migrationFilter)
 
+                // the offset of the message is only committed once it is delivered
+                .process(KafkaOffsetWatermark::hold)
+
                 // Remove headers of previous message,
                 // specifically the ones that HTTP components use
                 // to prevent passing the REST path to the HTTP producer.
@@ -96,33 +180,74 @@ public class SplunkIntegration extends IntegrationsRouteBuilder {
 
                 //Add properties useful for error reporting and metrics
                 .setProperty("targetUrl", simple("${headers.metadata[url]}"))
-                .setProperty("timeIn", simpleF("%d", System.currentTimeMillis()))
+                .process(StageTimer::handler)
 
-                //Set Authorization header
-                .setHeader("Authorization", simpleF("Splunk %s", "${headers.metadata[X-Insight-Token]}"))
+                .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
 
-                // body is a JsonObject so converting to consumable object
-                // for the http producer
-                .marshal().json(JsonLibrary.Jackson)
+                // refuse the message right away rather than piling up batches
+                .process(exchange -> batchRepository.ensureCapacity())
 
-                .setProperty("eventsCount", jsonpath("$.events.length()"))
+                // the events of this message are batched together, and only them
+                .setProperty(BATCH_ID, simple("${exchangeId}"))
 
-                // loops over events in the original message
-                .loop(exchangeProperty("eventsCount")).copy()
-                // picks one Event from the original message
-                .process(eventPicker)
+                // body is a JsonObject, its events are split in a single pass
+                // into Splunk HEC events that wrap the action with only that event
+                .process(new SplunkEventSplitter())
 
-                // Transform message to add splunk wrapper to the json
-                .transform().simple("{\"source\": \"eventing\", \"sourcetype\": \"Insights event\", \"event\": ${body}}")
+                // loops over the wrapped events of the original message
+                .split(body())
 
                 // aggregate transformed messages and append them together
-                // aggregate by "metadata" header as it contains data unique per target splunk instance
-                .aggregate(header("metadata"), new EventAppender())
+                // aggregate by the id of the original message, the batch is complete
+                // once all its events are in, or after a timeout if some never arrive
+                .aggregate(exchangeProperty(BATCH_ID), new EventAppender())
+                .aggregationRepository(batchRepository)
                 // use default of 10 threads to process aggregated records (that act as queue)
                 .parallelProcessing(true)
-                .completionSize(exchangeProperty("eventsCount"))
-                .process(new TargetUrlValidator()) // validate the TargetUrl to be a proper url
-                .process(new SplunkUrlCleaner())
+                .completionSize(exchangeProperty(SplunkEventSplitter.EVENTS_COUNT))
+                .completionTimeout(BATCH_COMPLETION_TIMEOUT)
+                // validate the TargetUrl to be a proper url, clean it and set Authorization header,
+                // all cached per target
+                .process(endpointCache)
+                .to(direct(COALESCING_ENABLED ? "splunkCoalesce" : "splunkSend"));
+    }
+
+    private void configureCoalescing() {
+        BatchCoalescer batchCoalescer = new BatchCoalescer(COALESCING_MAX_BYTES, COALESCING_MAX_EVENTS);
+
+        // Coalesce the batches of different messages going to the same Splunk target
+        // and token, so that they are sent with a single request
+        from(direct("splunkCoalesce"))
+                .routeId("splunkCoalesce")
+                .aggregate(exchangeProperty(TARGET_KEY), batchCoalescer)
+                .parallelProcessing(true)
+                // flush once the byte or event budget is reached,
+                // or at least every linger period
+                .completionPredicate(batchCoalescer)
+                .completionInterval(COALESCING_LINGER)
+                .to(direct("splunkSend"));
+    }
+
+    private void configureSend() {
+        from(direct("splunkSend"))
+                .routeId("splunkSend")
+                // split the batch into chunks that fit within the HEC limits
+                .process(new SplunkBatchChunker(HEC_MAX_BYTES, HEC_MAX_EVENTS))
+                // fail right away when the target is known to be unavailable
+                .process(circuitBreaker)
+                // a slow host only gets its share of the delivery threads
+                .process(hostBulkhead)
+                // in indexer acknowledgement mode, the chunks are sent on the channel of the target
+                .process(ackRegistry::prepare)
+
+                // send each chunk independently, the first failure ends the loop
+                // and a throttled chunk is sent again once the target allows it
+                .doTry()
+                .loopDoWhile(SplunkBatchChunker::hasNextChunk)
+                .process(SplunkBatchChunker::pickChunk)
+                .process(deliveryMetrics::request)
+                .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+                .process(new SplunkGzipCompressor(GZIP_ENABLED, GZIP_MIN_BYTES, !ASYNC_HTTP_ENABLED))
 
                 // Redirect depending on http or https (different default ports) so that it goes to the default splunk port
                 // Send the message to Splunk's HEC as a splunk formattted event.
@@ -131,25 +256,115 @@ public class SplunkIntegration extends IntegrationsRouteBuilder {
                 // (see https://camel.apache.org/components/latest/http-component.html#_which_http_method_will_be_used).
                 .setHeader(Exchange.HTTP_URI, exchangeProperty("targetUrl"))
                 .setHeader(Exchange.HTTP_PATH, constant("/services/collector/event"))
+                // wait for the turn of the target if it throttles the requests
+                .process(rateLimiter)
+                .process(StageTimer::send)
+                .doTry()
+                .choice()
+                .when(simple("${headers.metadata[trustAll]} == 'true'"))
+                .to(splunkEndpoint(true))
+                .endChoice()
+                .otherwise()
+                .to(splunkEndpoint(false))
+                .endChoice()
+                .endDoTry()
+                .process(StageTimer::response)
+                .process(SplunkAckRegistry::recordAck)
+                .process(rateLimiter::onSuccess)
+                .process(SplunkBatchChunker::nextChunk)
+                .doCatch(HttpOperationFailedException.class)
+                .onWhen(TargetRateLimiter::isThrottled)
+                .process(rateLimiter::onThrottled)
+                .end()
+                .end()
+                .endDoTry()
+                // the chunks accepted by Splunk must not be sent again, so a partial delivery
+                // is neither retried nor spooled but reported as such
+                .doCatch(Exception.class)
+                .onWhen(SplunkBatchChunker::isPartiallySent)
+                .process(SplunkBatchChunker::describePartialDelivery)
+                .end()
+
+                // the delivery is only reported once Splunk acknowledged that its accepted events were indexed
+                .choice()
+                .when(exchangeProperty(SplunkAckRegistry.ACK_IDS).isNotNull())
+                .process(ackRegistry::register)
+                .otherwise()
+                .to(direct("splunkDelivered"))
+                .end();
+
+        from(direct("splunkDelivered"))
+                .routeId("splunkDelivered")
+                // a partial delivery comes with the outcome telling which events were delivered
+                .choice()
+                .when(exchangeProperty(OUTCOME_EXCHANGE_PROPERTY).isNotNull())
+                .to(direct("deliveryFailed"))
+                .otherwise()
+                .to(direct("success"))
+                .end();
+    }
+
+    private void configureAckPoll() {
+        // Poll the pending acknowledgements of all the channels in the background,
+        // so that the sending threads never wait for the indexing
+        from(timer("splunkAckPoll").period(ACK_POLL_INTERVAL))
+                .routeId("splunkAckPoll")
+
+                // deliveries that were not acknowledged in time are reported as failed
+                .setBody(method(ackRegistry, "expire"))
+                .split(body())
+                .process(PendingDelivery::restore)
+                .setProperty(OUTCOME_EXCHANGE_PROPERTY,
+                        constant("Splunk did not acknowledge the indexing of the events in time"))
+                .to(direct("deliveryFailed"))
+                .end()
+
+                // a single ack request per channel
+                .setBody(method(ackRegistry, "pollRequests"))
+                .split(body())
+                .process(SplunkAckRegistry::preparePoll)
+                // a failed poll must not write a history record, the acks are polled again on the next run
+                .doTry()
                 .choice()
                 .when(simple("${headers.metadata[trustAll]} == 'true'"))
-                .to(https("dynamic")
-                        .sslContextParameters(getTrustAllCACerts())
-                        .x509HostnameVerifier(NoopHostnameVerifier.INSTANCE)
-                        .httpMethod("POST")
-                        .headerFilterStrategy(new SplunkHttpHeaderStrategy())
-                        .advanced()
-                        .httpClientConfigurer(getClientConfigurer()))
+                .to(splunkEndpoint(true))
                 .endChoice()
                 .otherwise()
-                .to(https("dynamic")
-                        .httpMethod("POST")
-                        .headerFilterStrategy(new SplunkHttpHeaderStrategy())
-                        .advanced()
-                        .httpClientConfigurer(getClientConfigurer()))
+                .to(splunkEndpoint(false))
                 .endChoice()
+                .endDoTry()
+                .process(exchange -> exchange.getIn().setBody(ackRegistry.acknowledge(exchange)))
+                .split(body())
+                .process(PendingDelivery::restore)
+                .to(direct("splunkDelivered"))
+                .endDoTry()
+                .doCatch(Exception.class)
+                .log(LoggingLevel.WARN, "Polling the Splunk indexer acknowledgements of ${exchangeProperty.targetUrl} failed:"
+                                        + " ${exception.message}")
                 .end()
-                .to(direct("success"));
+                .end();
+    }
+
+    private EndpointProducerBuilder splunkEndpoint(boolean trustAll) {
+        if (ASYNC_HTTP_ENABLED) {
+            return asyncHttps(new SplunkHttpHeaderStrategy(), trustAll);
+        }
+        if (trustAll) {
+            return https("dynamic")
+                    .sslContextParameters(getTrustAllCACerts())
+                    .x509HostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                    .httpMethod("POST")
+                    .headerFilterStrategy(new SplunkHttpHeaderStrategy())
+                    .advanced()
+                    .clientConnectionManager(trustAllConnectionPool.getConnectionManager())
+                    .httpClientConfigurer(trustAllConnectionPool.getClientConfigurer());
+        }
+        return https("dynamic")
+                .httpMethod("POST")
+                .headerFilterStrategy(new SplunkHttpHeaderStrategy())
+                .advanced()
+                .clientConnectionManager(connectionPool.getConnectionManager())
+                .httpClientConfigurer(connectionPool.getClientConfigurer());
     }
 
     protected SSLContextParameters getTrustAllCACerts() {
@@ -160,16 +375,4 @@ public class SplunkIntegration extends IntegrationsRouteBuilder {
 
         return sslContextParameters;
     }
-
-    protected HttpClientConfigurer getClientConfigurer() {
-        return (clientBuilder) -> {
-            // proactively evict expired connections from the connection pool using a background thread
-            clientBuilder.evictExpiredConnections();
-
-            // proactively evict idle connections from the connection pool after 5s using a background thread.
-            // Arguments set maximum time persistent connections can stay idle while kept alive in the connection pool.
-            // Connections whose inactivity period exceeds this value will get closed and evicted from the pool.
-            clientBuilder.evictIdleConnections(5L, TimeUnit.SECONDS);
-        };
-    }
 }
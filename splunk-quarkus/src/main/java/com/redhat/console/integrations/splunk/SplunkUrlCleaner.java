@@ -19,13 +19,22 @@ public class SplunkUrlCleaner implements Processor {
 
         String targetUrl = exchange.getProperty(TARGET_URL, String.class);
         if (targetUrl != null) {
-            if (targetUrl.endsWith(SERVICES_COLLECTOR)) {
-                String newTargetUrl = targetUrl.substring(0, targetUrl.length() - SERVICES_COLLECTOR.length());
-                exchange.setProperty(TARGET_URL, newTargetUrl);
-            } else if (targetUrl.endsWith(SERVICES_COLLECTOR_EVENT)) {
-                String newTargetUrl = targetUrl.substring(0, targetUrl.length() - SERVICES_COLLECTOR_EVENT.length());
+            String newTargetUrl = clean(targetUrl);
+            if (newTargetUrl != targetUrl) {
                 exchange.setProperty(TARGET_URL, newTargetUrl);
             }
         }
     }
+
+    /**
+     * @return the given URL without its '/services/collector' or '/services/collector/event' suffix.
+     */
+    public static String clean(String targetUrl) {
+        if (targetUrl.endsWith(SERVICES_COLLECTOR)) {
+            return targetUrl.substring(0, targetUrl.length() - SERVICES_COLLECTOR.length());
+        } else if (targetUrl.endsWith(SERVICES_COLLECTOR_EVENT)) {
+            return targetUrl.substring(0, targetUrl.length() - SERVICES_COLLECTOR_EVENT.length());
+        }
+        return targetUrl;
+    }
 }
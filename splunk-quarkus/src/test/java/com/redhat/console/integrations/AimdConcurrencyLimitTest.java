@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AimdConcurrencyLimitTest {
+
+    @Test
+    public void testLimit() {
+        AimdConcurrencyLimit limit = new AimdConcurrencyLimit(4, 1, 6, 0.5, 1.5);
+
+        // a limit that isn't reached doesn't grow
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(100L, 1, false, 0L);
+        }
+        assertEquals(4, limit.getLimit());
+        assertEquals(100.0, limit.getRtt(), 0.1);
+
+        // it grows by about one per limit requests while the latency is stable, up to the maximum
+        for (int i = 0; i < 5; i++) {
+            limit.onSample(100L, 4, false, 0L);
+        }
+        assertEquals(5, limit.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(100L, 6, false, 0L);
+        }
+        assertEquals(6, limit.getLimit());
+
+        // and stops growing when the latency increases
+        AimdConcurrencyLimit slowing = new AimdConcurrencyLimit(4, 1, 6, 0.5, 1.5);
+        slowing.onSample(100L, 4, false, 0L);
+        for (int i = 0; i < 20; i++) {
+            slowing.onSample(1000L, 4, false, 0L);
+        }
+        assertEquals(4, slowing.getLimit());
+
+        // drops cut it down to the minimum, once per congestion window
+        limit.onSample(2500L, 6, true, 10_000L);
+        assertEquals(3, limit.getLimit());
+        // the requests sent before the decrease were dropped by the same congestion
+        limit.onSample(2500L, 6, true, 11_000L);
+        limit.onSample(2000L, 6, true, 11_500L);
+        assertEquals(3, limit.getLimit());
+        limit.onSample(2500L, 3, true, 20_000L);
+        limit.onSample(2500L, 1, true, 30_000L);
+        assertEquals(1, limit.getLimit());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchCoalescerTest extends ExchangeTestSupport {
+    private final BatchCoalescer coalescer = new BatchCoalescer(1000, 3);
+
+    @Test
+    public void testCoalesce() {
+        Exchange coalesced = coalescer.aggregate(null, messageExchange("first", "{\"a\":1}"));
+        assertFalse(coalescer.matches(coalesced));
+
+        coalesced = coalescer.aggregate(coalesced, messageExchange("second", "{\"b\":2}"));
+        assertFalse(coalescer.matches(coalesced));
+
+        coalesced = coalescer.aggregate(coalesced, messageExchange("third", "{\"c\":3}"));
+        // the event budget is reached
+        assertTrue(coalescer.matches(coalesced));
+
+        EventBatch batch = coalesced.getIn().getBody(EventBatch.class);
+        assertEquals(3, batch.getEventCount());
+        assertEquals("{\"a\":1}{\"b\":2}{\"c\":3}", batch.toString());
+
+        List<?> coalescedEvents = coalesced.getProperty(COALESCED_EVENTS, List.class);
+        assertEquals(3, coalescedEvents.size());
+        assertEquals("second", ((CoalescedEvent) coalescedEvents.get(1)).getId());
+        assertEquals(1234L, ((CoalescedEvent) coalescedEvents.get(1)).getTimeIn());
+    }
+
+    private Exchange messageExchange(String id, String event) {
+        EventBatch batch = new EventBatch();
+        batch.append(event);
+        Exchange exchange = createExchangeWithBody(batch);
+        exchange.getIn().setHeader("ce-id", id);
+        exchange.getIn().setHeader("Ce-type", "com.redhat.console.notification.toCamel.splunk");
+        exchange.setProperty("timeIn", "1234");
+        return exchange;
+    }
+}
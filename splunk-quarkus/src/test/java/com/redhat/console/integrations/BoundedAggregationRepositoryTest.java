@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BoundedAggregationRepositoryTest extends ExchangeTestSupport {
+
+    @Test
+    public void testBounds() {
+        BoundedAggregationRepository repository = new BoundedAggregationRepository("test", 2, 1000);
+
+        Exchange first = batchExchange("0123456789");
+        repository.add(context, "first", first);
+        // updating an aggregate replaces its size
+        EventBatch batch = first.getIn().getBody(EventBatch.class);
+        batch.append("0123456789");
+        repository.add(context, "first", first);
+
+        assertEquals(1, repository.getOpenAggregates());
+        assertEquals(20, repository.getBytes());
+        assertDoesNotThrow(repository::ensureCapacity);
+
+        Exchange second = batchExchange("0123456789");
+        repository.add(context, "second", second);
+        assertThrows(IOException.class, repository::ensureCapacity);
+
+        repository.remove(context, "first", first);
+        assertEquals(1, repository.getOpenAggregates());
+        assertEquals(10, repository.getBytes());
+        assertDoesNotThrow(repository::ensureCapacity);
+
+        repository.add(context, "first", batchExchange(new String(new char[1000])));
+        assertThrows(IOException.class, repository::ensureCapacity);
+    }
+
+    private Exchange batchExchange(String event) {
+        EventBatch batch = new EventBatch();
+        batch.append(event);
+        return createExchangeWithBody(batch);
+    }
+}
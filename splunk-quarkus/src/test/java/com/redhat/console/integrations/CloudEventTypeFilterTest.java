@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CloudEventTypeFilterTest extends ExchangeTestSupport {
+    private static final String ACCEPTED_TYPE = "com.redhat.console.notification.toCamel.splunk";
+
+    private final CloudEventTypeFilter filter = new CloudEventTypeFilter(ACCEPTED_TYPE);
+
+    @Test
+    // the type is found even when it comes after the "data" field
+    public void testAcceptedTypeAfterData() {
+        Exchange exchange = createExchangeWithBody("{\"specversion\":\"1.0\",\"data\":{\"type\":\"nested\",\"events\":[{}]},"
+                                                   + "\"type\":\"" + ACCEPTED_TYPE + "\"}");
+        assertTrue(filter.matches(exchange));
+    }
+
+    @Test
+    // a nested "type" field must not be mistaken for the CloudEvent type
+    public void testNestedTypeIgnored() {
+        Exchange exchange = createExchangeWithBody("{\"data\":{\"type\":\"" + ACCEPTED_TYPE + "\"},"
+                                                   + "\"type\":\"com.redhat.console.notification.toCamel.servicenow\"}");
+        assertFalse(filter.matches(exchange));
+    }
+
+    @Test
+    // the Kafka record header takes precedence over the body
+    public void testKafkaHeader() {
+        Exchange exchange = createExchangeWithBody("not even json");
+        exchange.getIn().setHeader(CloudEventTypeFilter.KAFKA_TYPE_HEADER, ACCEPTED_TYPE.getBytes(StandardCharsets.UTF_8));
+        assertTrue(filter.matches(exchange));
+    }
+
+    @Test
+    // malformed payloads are dropped
+    public void testMalformedBody() {
+        Exchange exchange = createExchangeWithBody("{\"type\":");
+        assertFalse(filter.matches(exchange));
+    }
+
+    @Test
+    // payloads without a type are dropped
+    public void testMissingType() {
+        Exchange exchange = createExchangeWithBody("{\"specversion\":\"1.0\"}");
+        assertFalse(filter.matches(exchange));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DelayedRetryTest extends ExchangeTestSupport {
+
+    private static final String RECORD = "{\"id\":\"event\"}";
+
+    private final DelayedRetry delayedRetry = new DelayedRetry("retry", 3, 1000L, 4, 300_000L);
+
+    @Test
+    public void testDelays() {
+        assertEquals(1000L, delayedRetry.getDelay(1));
+        assertEquals(4000L, delayedRetry.getDelay(2));
+        assertEquals(16000L, delayedRetry.getDelay(3));
+        assertEquals("retry.2", delayedRetry.tierTopic(2));
+
+        // the consumers of the tier topics must not wait beyond their max.poll.interval.ms
+        assertThrows(IllegalArgumentException.class, () -> new DelayedRetry("retry", 3, 1000L, 4, 16_000L));
+    }
+
+    @Test
+    public void testTransientFailuresOnly() {
+        assertTrue(delayedRetry.matches(failedExchange(new IOException("Connect timed out"), 0)));
+        assertTrue(delayedRetry.matches(failedExchange(httpFailure(503), 0)));
+        assertTrue(delayedRetry.matches(failedExchange(new CircuitBreakerOpenException("Circuit open"), 0)));
+        assertFalse(delayedRetry.matches(failedExchange(httpFailure(400), 0)));
+        assertFalse(delayedRetry.matches(failedExchange(new IllegalArgumentException("Invalid URL"), 0)));
+        // all the attempts failed
+        assertFalse(delayedRetry.matches(failedExchange(httpFailure(503), 3)));
+        // the record is unknown
+        Exchange exchange = failedExchange(httpFailure(503), 0);
+        exchange.removeProperty(DelayedRetry.RECORD);
+        assertFalse(delayedRetry.matches(exchange));
+    }
+
+    @Test
+    public void testCoalescedDeliveries() {
+        Exchange exchange = failedExchange(httpFailure(503), 0);
+        exchange.setProperty(COALESCED_EVENTS, List.of(
+                new CoalescedEvent("first", null, null, null, null, null, RECORD, "key", 0, null, null),
+                new CoalescedEvent("second", null, null, null, null, null, RECORD, "key", 1, null, null)));
+        assertTrue(delayedRetry.matches(exchange));
+
+        delayedRetry.schedule(exchange);
+        List<?> records = exchange.getIn().getBody(List.class);
+        assertEquals(2, records.size());
+        assertEquals("retry.2", ((Message) records.get(1)).getHeader(KafkaConstants.OVERRIDE_TOPIC));
+        assertEquals("key", ((Message) records.get(1)).getHeader(KafkaConstants.KEY));
+
+        exchange.setProperty(COALESCED_EVENTS, List.of(
+                new CoalescedEvent("first", null, null, null, null, null, RECORD, "key", 0, null, null),
+                new CoalescedEvent("second", null, null, null, null, null, RECORD, "key", 3, null, null)));
+        assertFalse(delayedRetry.matches(exchange));
+    }
+
+    @Test
+    public void testDeferredDeliveries() {
+        // retried on the first attempt whose delay covers the time to wait
+        Exchange exchange = failedExchange(new DeliveryDeferredException("Rate limited", 3000L), 0);
+        assertTrue(delayedRetry.matches(exchange));
+        delayedRetry.schedule(exchange);
+        Message record = (Message) exchange.getIn().getBody(List.class).get(0);
+        assertEquals("retry.2", record.getHeader(KafkaConstants.OVERRIDE_TOPIC));
+        assertEquals("2", record.getHeader(DelayedRetry.ATTEMPT_HEADER));
+
+        // or not at all if none does
+        assertFalse(delayedRetry.matches(failedExchange(new DeliveryDeferredException("Rate limited", 60000L), 0)));
+        // the other rejections are not retried
+        assertFalse(delayedRetry.matches(failedExchange(new DeliveryRejectedException("Too many deliveries"), 0)));
+    }
+
+    @Test
+    public void testScheduleAndAwaitDue() throws Exception {
+        Exchange failed = failedExchange(new IOException("Read timed out"), 0);
+        failed.getIn().setHeader("metadata", "dropped");
+        long before = System.currentTimeMillis();
+        delayedRetry.schedule(failed);
+
+        Message record = (Message) failed.getIn().getBody(List.class).get(0);
+        assertEquals(RECORD, record.getBody());
+        assertEquals("retry.1", record.getHeader(KafkaConstants.OVERRIDE_TOPIC));
+        assertEquals("1", record.getHeader(DelayedRetry.ATTEMPT_HEADER));
+        assertEquals("org-key", record.getHeader(KafkaConstants.KEY));
+        assertNull(record.getHeader("metadata"));
+
+        // received back from the tier topic, with the headers deserialized as bytes
+        Exchange received = createExchangeWithBody(RECORD);
+        received.getIn().setHeader(DelayedRetry.ATTEMPT_HEADER, "1".getBytes(StandardCharsets.UTF_8));
+        received.getIn().setHeader(DelayedRetry.DUE_HEADER,
+                record.getHeader(DelayedRetry.DUE_HEADER, String.class).getBytes(StandardCharsets.UTF_8));
+        received.getIn().setHeader(KafkaConstants.KEY, "org-key");
+        DelayedRetry.awaitDue(received);
+        DelayedRetry.keepRecord(received);
+
+        assertTrue(System.currentTimeMillis() >= before + 1000L);
+        assertEquals(1, received.getProperty(DelayedRetry.ATTEMPT));
+        assertEquals("org-key", received.getProperty(DelayedRetry.RECORD_KEY));
+        assertEquals(1, received.getIn().getHeaders().size());
+    }
+
+    private Exchange failedExchange(Exception exception, int attempt) {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.setProperty(Exchange.EXCEPTION_CAUGHT, exception);
+        exchange.setProperty(DelayedRetry.RECORD, RECORD);
+        exchange.setProperty(DelayedRetry.RECORD_KEY, "org-key");
+        exchange.setProperty(DelayedRetry.ATTEMPT, attempt);
+        return exchange;
+    }
+
+    private static HttpOperationFailedException httpFailure(int statusCode) {
+        return new HttpOperationFailedException("https://splunk.example.com", statusCode, "Failed", null, null, null);
+    }
+}
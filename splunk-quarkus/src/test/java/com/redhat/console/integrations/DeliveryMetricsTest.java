@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DeliveryMetricsTest extends ExchangeTestSupport {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void addRegistry() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    public void removeRegistry() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    public void testBusiestTargets() {
+        DeliveryMetrics deliveryMetrics = new DeliveryMetrics("splunk", 2);
+
+        assertEquals("a.example.com", deliveryMetrics.tag("a.example.com"));
+        assertEquals("b.example.com", deliveryMetrics.tag("b.example.com"));
+        // beyond the busiest targets
+        assertEquals(DeliveryMetrics.OTHER_TARGET, deliveryMetrics.tag("c.example.com"));
+        assertEquals("a.example.com", deliveryMetrics.tag("a.example.com"));
+        assertEquals(DeliveryMetrics.UNKNOWN_TARGET, deliveryMetrics.tag(DeliveryMetrics.UNKNOWN_TARGET));
+    }
+
+    @Test
+    public void testHost() {
+        assertEquals("splunk.example.com", DeliveryMetrics.host("https://splunk.example.com:8088/services"));
+        assertEquals(DeliveryMetrics.UNKNOWN_TARGET, DeliveryMetrics.host("not a url"));
+        assertEquals(DeliveryMetrics.UNKNOWN_TARGET, DeliveryMetrics.host(null));
+    }
+
+    @Test
+    public void testOutcomes() {
+        DeliveryMetrics deliveryMetrics = new DeliveryMetrics("splunk", 2);
+
+        Exchange success = createExchangeWithBody("");
+        success.setProperty("targetUrl", "https://splunk.example.com");
+        success.setProperty(StageTimer.TIME_IN, System.currentTimeMillis());
+        deliveryMetrics.recordOutcome(success, "success");
+
+        Exchange failure = createExchangeWithBody("");
+        failure.setProperty("targetUrl", "https://splunk.example.com");
+        failure.setProperty(Exchange.EXCEPTION_CAUGHT,
+                new HttpOperationFailedException("https://splunk.example.com", 503, "Unavailable", null, null, null));
+        deliveryMetrics.recordOutcome(failure, "httpFailed");
+
+        assertEquals(1.0, registry.get("integrations.delivery.outcomes")
+                .tags("integration", "splunk", "target", "splunk.example.com", "outcome", "success", "status",
+                        DeliveryMetrics.NO_STATUS)
+                .counter().count());
+        assertEquals(1.0, registry.get("integrations.delivery.outcomes")
+                .tags("outcome", "httpFailed", "status", "5xx")
+                .counter().count());
+        assertEquals(1L, registry.get("integrations.delivery.latency").tags("outcome", "success").timer().count());
+    }
+
+    @Test
+    public void testRequest() {
+        DeliveryMetrics deliveryMetrics = new DeliveryMetrics("splunk", 2);
+
+        Exchange exchange = createExchangeWithBody(new byte[1024]);
+        exchange.setProperty("targetUrl", "https://splunk.example.com");
+        exchange.setProperty(DeliveryMetrics.REQUEST_EVENTS, 10);
+        deliveryMetrics.request(exchange);
+
+        assertEquals(1024.0, registry.get("integrations.delivery.request.bytes").summary().totalAmount());
+        assertEquals(10.0, registry.get("integrations.delivery.request.events").summary().totalAmount());
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EventAppenderTest extends ExchangeTestSupport {
+    private final EventAppender appender = new EventAppender();
+
+    @Test
+    public void testAppend() {
+        Exchange aggregated = appender.aggregate(null, createExchangeWithBody("{\"event\":1}"));
+        aggregated = appender.aggregate(aggregated, createExchangeWithBody("{\"event\":\"ü\"}"));
+        aggregated = appender.aggregate(aggregated, createExchangeWithBody("{\"event\":3}"));
+
+        EventBatch batch = aggregated.getIn().getBody(EventBatch.class);
+        assertEquals(3, batch.getEventCount());
+        assertEquals("{\"event\":1}{\"event\":\"ü\"}{\"event\":3}".getBytes(StandardCharsets.UTF_8).length,
+                batch.size());
+
+        assertEquals("{\"event\":1}{\"event\":\"ü\"}{\"event\":3}", new String(batch.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
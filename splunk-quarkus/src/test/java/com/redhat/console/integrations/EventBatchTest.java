@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class EventBatchTest {
+
+    @Test
+    public void testSplit() {
+        EventBatch other = new EventBatch(4);
+        for (int i = 0; i < 10; i++) {
+            other.append("e" + i + ";");
+        }
+        EventBatch batch = new EventBatch();
+        batch.append("X;");
+        batch.append(other);
+
+        assertEquals(11, batch.getEventCount());
+        assertEquals(32, batch.size());
+
+        // within the limits
+        List<EventBatch> chunks = batch.split(1000, 1000);
+        assertEquals(1, chunks.size());
+        assertSame(batch, chunks.get(0));
+
+        // split on both bytes and events
+        chunks = batch.split(9, 3);
+        assertEquals(4, chunks.size());
+        assertEquals("X;e0;e1;", chunks.get(0).toString());
+        assertEquals("e2;e3;e4;", chunks.get(1).toString());
+        assertEquals("e5;e6;e7;", chunks.get(2).toString());
+        assertEquals("e8;e9;", chunks.get(3).toString());
+        assertEquals(2, chunks.get(3).getEventCount());
+        assertEquals(6, chunks.get(3).size());
+
+        // chunks keep their event boundaries
+        List<EventBatch> subChunks = chunks.get(1).split(100, 1);
+        assertEquals(3, subChunks.size());
+        assertEquals("e3;", subChunks.get(1).toString());
+
+        // events larger than the byte limit are sent on their own
+        assertEquals(11, batch.split(1, 100).size());
+    }
+}
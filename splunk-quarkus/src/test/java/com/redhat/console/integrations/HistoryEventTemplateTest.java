@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import org.apache.camel.util.json.JsonObject;
+import org.apache.camel.util.json.Jsoner;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistoryEventTemplateTest {
+
+    private final HistoryEventTemplate template = new HistoryEventTemplate("com.redhat.console.notifications.history",
+            "1.0", "splunk");
+
+    @Test
+    public void testWrite() throws Exception {
+        String event = template.write("1234", "2022-09-01T10:00:00.123", true, 42L,
+                "https://splunk.example.com/\"quoted\"\\path", "type\nwith\tcontrols", "Event \"1234\" sent successfully",
+                null, -1L);
+
+        JsonObject cloudEvent = (JsonObject) Jsoner.deserialize(event);
+        assertEquals("com.redhat.console.notifications.history", cloudEvent.getString("type"));
+        assertEquals("1.0", cloudEvent.getString("specversion"));
+        assertEquals("splunk", cloudEvent.getString("source"));
+        assertEquals("1234", cloudEvent.getString("id"));
+        assertEquals("2022-09-01T10:00:00.123", cloudEvent.getString("time"));
+
+        // the data is a serialized JSON document
+        JsonObject data = (JsonObject) Jsoner.deserialize(cloudEvent.getString("data"));
+        assertEquals(true, data.getBoolean("successful"));
+        assertEquals(42L, data.getLong("duration"));
+        JsonObject details = (JsonObject) data.get("details");
+        assertEquals("https://splunk.example.com/\"quoted\"\\path", details.getString("target"));
+        assertEquals("type\nwith\tcontrols", details.getString("type"));
+        assertEquals("Event \"1234\" sent successfully", details.getString("outcome"));
+    }
+
+    @Test
+    public void testWriteStages() throws Exception {
+        long[] stages = { 120L, -1L, 35L, 80L };
+        JsonObject cloudEvent = (JsonObject) Jsoner.deserialize(template.write("1234", "now", true, 115L,
+                "https://splunk.example.com", "type", "outcome", stages, 250L));
+
+        JsonObject data = (JsonObject) Jsoner.deserialize(cloudEvent.getString("data"));
+        JsonObject timings = (JsonObject) data.get("stages");
+        assertEquals(120L, timings.getLong("broker"));
+        // not timed
+        assertNull(timings.get("ingress"));
+        assertEquals(35L, timings.getLong("handler"));
+        assertEquals(80L, timings.getLong("response"));
+        assertEquals(250L, timings.getLong("endToEnd"));
+
+        // left out altogether
+        cloudEvent = (JsonObject) Jsoner.deserialize(template.write("1234", "now", true, 115L,
+                "https://splunk.example.com", "type", "outcome", null, 250L));
+        data = (JsonObject) Jsoner.deserialize(cloudEvent.getString("data"));
+        assertNull(data.get("stages"));
+    }
+
+    @Test
+    public void testWriteNulls() throws Exception {
+        JsonObject cloudEvent = (JsonObject) Jsoner.deserialize(template.write(null, "now", null, 0L, null, null,
+                null, null, -1L));
+        assertNull(cloudEvent.get("id"));
+
+        JsonObject data = (JsonObject) Jsoner.deserialize(cloudEvent.getString("data"));
+        assertNull(data.get("successful"));
+        JsonObject details = (JsonObject) data.get("details");
+        assertNull(details.get("target"));
+        assertNull(details.get("type"));
+        assertNull(details.get("outcome"));
+    }
+
+    @Test
+    public void testWritesAreIndependent() {
+        String first = template.write("1", "now", true, 1L, "https://a", "t", "o", null, -1L);
+        String second = template.write("2", "now", false, 2L, "https://b", "t", "o", null, -1L);
+        // the buffer is reused, not the records
+        assertTrue(first.contains("\"id\":\"1\""));
+        assertTrue(second.contains("\"id\":\"2\""));
+        assertEquals(first, template.write("1", "now", true, 1L, "https://a", "t", "o", null, -1L));
+    }
+}
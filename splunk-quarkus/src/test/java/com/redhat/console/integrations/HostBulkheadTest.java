@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.micrometer.core.instrument.Metrics;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.spi.Synchronization;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HostBulkheadTest extends ExchangeTestSupport {
+
+    @Test
+    public void testBulkhead() {
+        HostBulkhead bulkhead = new HostBulkhead(1, 1, 1, 1, 60000L, Runnable::run);
+
+        Exchange first = targetExchange("https://slow.example.com/services/collector");
+        assertTrue(bulkhead.process(first, doneSync -> {
+        }));
+
+        // other hosts are not affected
+        assertTrue(bulkhead.process(targetExchange("https://fast.example.com"), doneSync -> {
+        }));
+
+        // the next delivery to the slow host waits for its turn without holding the thread
+        AtomicBoolean resumed = new AtomicBoolean();
+        Exchange second = targetExchange("https://slow.example.com");
+        assertFalse(bulkhead.process(second, doneSync -> resumed.set(true)));
+        assertEquals(1, bulkhead.getQueued("slow.example.com"));
+
+        // and beyond the queue, deliveries are deferred to be retried or spooled
+        Exchange third = targetExchange("https://slow.example.com");
+        assertTrue(bulkhead.process(third, doneSync -> {
+        }));
+        assertInstanceOf(DeliveryDeferredException.class, third.getException());
+        assertFalse(TargetCircuitBreaker.isUnavailable(third.getException()));
+
+        // the waiting delivery carries on once the first one is done
+        done(first);
+        assertTrue(resumed.get());
+        assertEquals(0, bulkhead.getQueued("slow.example.com"));
+        assertEquals(1, bulkhead.getInFlight("slow.example.com"));
+        done(second);
+        assertEquals(0, bulkhead.getInFlight("slow.example.com"));
+    }
+
+    @Test
+    public void testIdleExpiry() throws Exception {
+        HostBulkhead bulkhead = new HostBulkhead(1, 1, 1, 1, 100L, Runnable::run);
+
+        Exchange busy = targetExchange("https://busy.example.com");
+        assertTrue(bulkhead.process(busy, doneSync -> {
+        }));
+        Exchange idle = targetExchange("https://idle.example.com");
+        assertTrue(bulkhead.process(idle, doneSync -> {
+        }));
+        done(idle);
+        assertEquals(2, bulkhead.getHostCount());
+
+        // the hosts without deliveries are dropped by the next delivery, along with their gauges
+        Thread.sleep(150L);
+        assertTrue(bulkhead.process(targetExchange("https://other.example.com"), doneSync -> {
+        }));
+        assertEquals(2, bulkhead.getHostCount());
+        assertEquals(0, bulkhead.getInFlight("idle.example.com"));
+        assertNull(Metrics.globalRegistry.find("integrations.bulkhead.in-flight").tag("host", "idle.example.com")
+                .gauge());
+        assertEquals(1, bulkhead.getInFlight("busy.example.com"));
+    }
+
+    private static void done(Exchange exchange) {
+        for (Synchronization synchronization : exchange.adapt(ExtendedExchange.class).handoverCompletions()) {
+            synchronization.onComplete(exchange);
+        }
+    }
+
+    private Exchange targetExchange(String targetUrl) {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.setProperty("targetUrl", targetUrl);
+        return exchange;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HttpConnectionPoolTest {
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void startServer() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        wireMockServer.stubFor(get(urlEqualTo("/")).willReturn(aResponse().withStatus(200).withBody("ok")));
+    }
+
+    @AfterEach
+    public void stopServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool("test", null, null, 10, 10, 100L, 200L);
+        pool.start();
+        try {
+            HttpClientBuilder clientBuilder = HttpClientBuilder.create()
+                    .setConnectionManager(pool.getConnectionManager());
+            pool.getClientConfigurer().configureHttpClient(clientBuilder);
+            CloseableHttpClient client = clientBuilder.build();
+
+            try (CloseableHttpResponse response = client.execute(new HttpGet(wireMockServer.baseUrl() + "/"))) {
+                EntityUtils.consume(response.getEntity());
+            }
+            PoolingHttpClientConnectionManager connectionManager = (PoolingHttpClientConnectionManager) pool
+                    .getConnectionManager();
+            // kept alive once released
+            assertEquals(1, connectionManager.getTotalStats().getAvailable());
+
+            // closed in the background once idle for longer than its keep-alive
+            long deadline = System.currentTimeMillis() + 5000;
+            while (connectionManager.getTotalStats().getAvailable() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, connectionManager.getTotalStats().getAvailable());
+        } finally {
+            pool.stop();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.camel.spi.Synchronization;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.apache.camel.util.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IngressBatchProcessorTest extends ExchangeTestSupport {
+
+    @Test
+    public void testGroupByTarget() {
+        // the body is the target URL, or the type of another integration
+        Processor decoder = exchange -> {
+            JsonObject metadata = new JsonObject();
+            metadata.put("url", exchange.getIn().getBody(String.class));
+            exchange.getIn().setHeader("metadata", metadata);
+        };
+        IngressBatchProcessor processor = new IngressBatchProcessor(
+                exchange -> !"other".equals(exchange.getIn().getBody(String.class)), decoder, null, "direct:handler");
+
+        List<Exchange> records = new ArrayList<>();
+        for (String body : List.of("https://a", "other", "https://b", "https://a", "https://b", "https://a")) {
+            records.add(createExchangeWithBody(body));
+        }
+
+        List<List<Exchange>> groups = processor.groupByTarget(records);
+
+        assertEquals(2, groups.size());
+        // in the order the targets first appear, keeping the order of the records of each target
+        assertEquals(List.of(records.get(0), records.get(3), records.get(5)), groups.get(0));
+        assertEquals(List.of(records.get(2), records.get(4)), groups.get(1));
+        // kept as is, should the delivery be retried
+        assertEquals("https://b", groups.get(1).get(0).getProperty(DelayedRetry.RECORD));
+    }
+
+    @Test
+    public void testDroppedRecordsAreCommitted() {
+        List<Long> commits = new ArrayList<>();
+        Exchange record = createExchangeWithBody("other");
+        record.getIn().setHeader(KafkaConstants.TOPIC, "platform.notifications.tocamel");
+        record.getIn().setHeader(KafkaConstants.PARTITION, 0);
+        record.getIn().setHeader(KafkaConstants.OFFSET, 10L);
+        record.getIn().setHeader(KafkaConstants.MANUAL_COMMIT, (KafkaManualCommit) () -> commits.add(10L));
+        new KafkaOffsetWatermark().track(record);
+
+        // held by the batch once the ingress exchange completed
+        KafkaOffsetWatermark.hold(record);
+        for (Synchronization synchronization : record.adapt(ExtendedExchange.class).handoverCompletions()) {
+            synchronization.onComplete(record);
+        }
+        assertTrue(commits.isEmpty());
+
+        IngressBatchProcessor processor = new IngressBatchProcessor(exchange -> false, exchange -> {
+        }, null, "direct:handler");
+        assertTrue(processor.groupByTarget(List.of(record)).isEmpty());
+        assertEquals(List.of(10L), commits);
+    }
+}
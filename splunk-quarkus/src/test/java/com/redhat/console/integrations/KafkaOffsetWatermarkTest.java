@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.camel.spi.Synchronization;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KafkaOffsetWatermarkTest extends ExchangeTestSupport {
+
+    private static final String TOPIC = "platform.notifications.tocamel";
+
+    private final KafkaOffsetWatermark offsetWatermark = new KafkaOffsetWatermark();
+    private final List<Long> commits = new ArrayList<>();
+
+    @Test
+    public void testContiguousCommits() {
+        Exchange first = record(0, 10L);
+        Exchange second = record(0, 11L);
+        Exchange third = record(0, 12L);
+        Exchange otherPartition = record(1, 10L);
+
+        // the first record is still being delivered once its exchange completed
+        KafkaOffsetWatermark.hold(first);
+        complete(first);
+        complete(third);
+        complete(second);
+        assertTrue(commits.isEmpty());
+        assertEquals(-1L, offsetWatermark.getCommittedOffset(TOPIC, 0));
+
+        complete(otherPartition);
+        assertEquals(List.of(10L), commits);
+
+        // a single commit for all the records that are now done with
+        Exchange delivery = first.copy();
+        KafkaOffsetWatermark.release(delivery);
+        assertEquals(List.of(10L, 12L), commits);
+        assertEquals(12L, offsetWatermark.getCommittedOffset(TOPIC, 0));
+
+        // released at most once per delivery
+        KafkaOffsetWatermark.release(delivery);
+        assertEquals(List.of(10L, 12L), commits);
+    }
+
+    private Exchange record(int partition, long offset) {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.getIn().setHeader(KafkaConstants.TOPIC, TOPIC);
+        exchange.getIn().setHeader(KafkaConstants.PARTITION, partition);
+        exchange.getIn().setHeader(KafkaConstants.OFFSET, offset);
+        exchange.getIn().setHeader(KafkaConstants.MANUAL_COMMIT, (KafkaManualCommit) () -> commits.add(offset));
+        offsetWatermark.track(exchange);
+        return exchange;
+    }
+
+    private static void complete(Exchange exchange) {
+        for (Synchronization synchronization : exchange.adapt(ExtendedExchange.class).handoverCompletions()) {
+            synchronization.onComplete(exchange);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.camel.spi.Synchronization;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.apache.camel.util.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyStriperTest extends ExchangeTestSupport {
+
+    @Test
+    public void testStripeByUrl() {
+        KeyStriper striper = new KeyStriper(4, KeyStriper.URL_KEY, 1000L);
+
+        Set<Integer> stripes = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            int stripe = stripe(striper, "https://splunk" + i + ".example.com", "org");
+            // the same target always gets the same stripe
+            assertEquals(stripe, stripe(striper, "https://splunk" + i + ".example.com", "other org"));
+            assertTrue(stripe >= 0 && stripe < 4);
+            stripes.add(stripe);
+        }
+        assertTrue(stripes.size() > 1);
+    }
+
+    @Test
+    public void testStripeByOrgId() {
+        KeyStriper striper = new KeyStriper(4, KeyStriper.ORG_ID_KEY, 1000L);
+        assertEquals(stripe(striper, "https://a.example.com", "org"), stripe(striper, "https://b.example.com", "org"));
+    }
+
+    @Test
+    public void testUnknownKey() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyStriper(4, "accountId", 1000L));
+    }
+
+    @Test
+    public void testStripeOfUndecodedEvent() throws Exception {
+        String data = "{\"org_id\":\"org\",\"notif-metadata\":{\"url\":\"https://splunk.example.com\"}}";
+        String cloudEvent = "{\"id\":\"event\",\"data\":" + data + "}";
+        assertEquals("https://splunk.example.com", KeyStriper.readField(cloudEvent, List.of("data", "notif-metadata",
+                "url")));
+        assertEquals("org", KeyStriper.readField(cloudEvent, List.of("data", "org_id")));
+        assertNull(KeyStriper.readField(cloudEvent, List.of("data", "account_id")));
+
+        // the data given as a JSON string
+        String encoded = "{\"id\":\"event\",\"data\":\"" + data.replace("\"", "\\\"") + "\"}";
+        assertEquals("https://splunk.example.com", KeyStriper.readField(encoded, List.of("data", "notif-metadata",
+                "url")));
+
+        // the same stripe as once decoded
+        KeyStriper striper = new KeyStriper(4, KeyStriper.URL_KEY, 1000L);
+        Exchange exchange = createExchangeWithBody(encoded);
+        striper.process(exchange);
+        assertEquals(stripe(striper, "https://splunk.example.com", "org"),
+                exchange.getProperty(KeyStriper.STRIPE, Integer.class));
+    }
+
+    @Test
+    public void testAwaitDelivery() throws Exception {
+        KeyStriper striper = new KeyStriper(4, KeyStriper.URL_KEY, 200L);
+        KafkaOffsetWatermark offsetWatermark = new KafkaOffsetWatermark();
+        List<Long> commits = new ArrayList<>();
+
+        Exchange exchange = createExchangeWithBody("");
+        exchange.getIn().setHeader(KafkaConstants.TOPIC, "platform.notifications.tocamel");
+        exchange.getIn().setHeader(KafkaConstants.PARTITION, 0);
+        exchange.getIn().setHeader(KafkaConstants.OFFSET, 10L);
+        exchange.getIn().setHeader(KafkaConstants.MANUAL_COMMIT, (KafkaManualCommit) () -> commits.add(10L));
+        offsetWatermark.track(exchange);
+        striper.process(exchange);
+        KeyStriper.enter(exchange);
+
+        // the delivery carries on asynchronously, the stripe moves on once it is done with
+        KafkaOffsetWatermark.hold(exchange);
+        Exchange delivery = exchange.copy();
+        new Thread(() -> {
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            KafkaOffsetWatermark.release(delivery);
+        }).start();
+        long before = System.currentTimeMillis();
+        striper.awaitDelivery(exchange);
+        long waited = System.currentTimeMillis() - before;
+        assertTrue(waited >= 40L && waited < 200L, "Waited " + waited + " ms");
+
+        // the record is committed once its exchange completes as well
+        assertTrue(commits.isEmpty());
+        for (Synchronization synchronization : exchange.adapt(ExtendedExchange.class).handoverCompletions()) {
+            synchronization.onComplete(exchange);
+        }
+        assertEquals(List.of(10L), commits);
+
+        // or at most the wait timeout
+        Exchange stuck = createExchangeWithBody("");
+        stuck.getIn().setHeader(KafkaConstants.TOPIC, "platform.notifications.tocamel");
+        stuck.getIn().setHeader(KafkaConstants.PARTITION, 0);
+        stuck.getIn().setHeader(KafkaConstants.OFFSET, 11L);
+        stuck.getIn().setHeader(KafkaConstants.MANUAL_COMMIT, (KafkaManualCommit) () -> commits.add(11L));
+        offsetWatermark.track(stuck);
+        KeyStriper.enter(stuck);
+        KafkaOffsetWatermark.hold(stuck);
+        before = System.currentTimeMillis();
+        striper.awaitDelivery(stuck);
+        assertTrue(System.currentTimeMillis() - before >= 200L);
+    }
+
+    private int stripe(KeyStriper striper, String url, String orgId) {
+        JsonObject metadata = new JsonObject();
+        metadata.put("url", url);
+        Exchange exchange = createExchangeWithBody("");
+        exchange.getIn().setHeader("metadata", metadata);
+        exchange.getIn().setHeader("orgId", orgId);
+        striper.process(exchange);
+        return exchange.getProperty(KeyStriper.STRIPE, Integer.class);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.kafka.DefaultKafkaClientFactory;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
+import org.apache.camel.spi.Synchronization;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.junit.jupiter.api.Test;
+
+import static com.redhat.console.integrations.BatchCoalescer.COALESCED_EVENTS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+@TestProfile(MainRoutesReturnTest.class)
+public class MainRoutesReturnTest extends CamelQuarkusTestSupport {
+
+    private static final String TARGET_URL = "https://splunk.example.com";
+    private static final String RECORD = "{\"id\":\"event\"}";
+
+    /**
+     * The records sent by the "return" route, along with what was left to release when each of them was sent.
+     */
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<Long> commits = new CopyOnWriteArrayList<>();
+
+    /**
+     * Signal Camel that when we manipulate the endpoints the routes shouldn't be restarted.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isUseAdviceWith() {
+        return true;
+    }
+
+    /**
+     * Enables the spool, in a directory of its own, without replaying anything on its own.
+     *
+     * @return a map with the spool properties overridden.
+     */
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return Map.of(
+                "integrations.spool.enabled", "true",
+                "integrations.spool.directory", System.getProperty("java.io.tmpdir")
+                        + "/eventing-integrations-test/spool-" + ProcessHandle.current().pid(),
+                "integrations.spool.replay-interval", "3600000");
+    }
+
+    /**
+     * Tests that the history records of a coalesced delivery are sent as a Kafka record each, and that the replayed
+     * event and the Kafka record of the delivery are only released once the history records were sent.
+     *
+     * @throws Exception if any unexpected error occurs.
+     */
+    @Test
+    void testHistoryRecordsSentBeforeRelease() throws Exception {
+        this.context.getRouteController().stopRoute("spoolReplay");
+        final TargetSpool spool = IntegrationsRouteBuilder.getTargetSpool();
+
+        // Send the history records with a mocked Kafka producer.
+        this.context.getRegistry().bind("returnClientFactory", new DefaultKafkaClientFactory() {
+            @Override
+            public Producer getProducer(Properties kafkaProps) {
+                return new MockProducer<>(true, new StringSerializer(), new StringSerializer()) {
+                    @Override
+                    public synchronized Future<RecordMetadata> send(ProducerRecord<String, String> record,
+                            Callback callback) {
+                        sent.add(record.value() + " sent with " + spool.getLiveRecords(TARGET_URL)
+                                + " spooled event(s) and " + commits.size() + " commit(s)");
+                        return super.send(record, callback);
+                    }
+                };
+            }
+        });
+        final String returnTopic = ConfigProvider.getConfig().getValue("mp.messaging.kafka.return.topic", String.class);
+        AdviceWith.adviceWith(this.context, "return-producer", a -> a.weaveByToUri("kafka:*").replace()
+                .to("kafka:" + returnTopic + "?kafkaClientFactory=#returnClientFactory"));
+
+        // A Kafka record whose exchange is done with, while its delivery still holds it.
+        final Exchange received = createExchangeWithBody(RECORD);
+        received.getIn().setHeader(KafkaConstants.TOPIC, "platform.notifications.tocamel");
+        received.getIn().setHeader(KafkaConstants.PARTITION, 0);
+        received.getIn().setHeader(KafkaConstants.OFFSET, 42L);
+        received.getIn().setHeader(KafkaConstants.MANUAL_COMMIT, (KafkaManualCommit) () -> commits.add(42L));
+        new KafkaOffsetWatermark().track(received);
+        KafkaOffsetWatermark.hold(received);
+        for (Synchronization synchronization : received.adapt(ExtendedExchange.class).handoverCompletions()) {
+            synchronization.onComplete(received);
+        }
+
+        // A spooled event being replayed.
+        final Exchange failed = createExchangeWithBody("");
+        failed.setProperty(Exchange.EXCEPTION_CAUGHT, new CircuitBreakerOpenException("Circuit open"));
+        failed.setProperty(DelayedRetry.RECORD, RECORD);
+        failed.setProperty("targetUrl", TARGET_URL);
+        assertTrue(spool.keep(failed));
+        final List<TargetSpool.SpooledRecord> replayed = spool.replay();
+        assertEquals(1, replayed.size());
+        final Exchange replay = createExchangeWithBody(replayed.get(0));
+        TargetSpool.prepareReplay(replay);
+
+        // Both events delivered with a single request, with a history record each.
+        final Exchange delivery = createExchangeWithBody(List.of("{\"history\":1}", "{\"history\":2}"));
+        delivery.setProperty(COALESCED_EVENTS, List.of(CoalescedEvent.of(received), CoalescedEvent.of(replay)));
+
+        this.template.send("direct:return", delivery);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> commits.equals(List.of(42L)));
+        assertEquals(0, spool.getLiveRecords(TARGET_URL));
+        assertEquals(List.of(
+                "{\"history\":1} sent with 1 spooled event(s) and 0 commit(s)",
+                "{\"history\":2} sent with 1 spooled event(s) and 0 commit(s)"), sent);
+    }
+}
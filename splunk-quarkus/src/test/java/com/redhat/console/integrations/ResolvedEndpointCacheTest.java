@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.http.ProtocolException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResolvedEndpointCacheTest {
+
+    @Test
+    public void testResolve() throws Exception {
+        AtomicInteger resolutions = new AtomicInteger();
+        ResolvedEndpointCache cache = new ResolvedEndpointCache("test", 2, 1000L, (targetUrl, token) -> {
+            resolutions.incrementAndGet();
+            return new ResolvedEndpoint(targetUrl + "/cleaned", "Token " + token);
+        });
+
+        ResolvedEndpoint endpoint = cache.resolve("https://example.com", "secret", false, 0L);
+        assertEquals("https://example.com/cleaned", endpoint.getTargetUrl());
+        assertEquals("Token secret", endpoint.getAuthorization());
+
+        // repeated messages to the same target are resolved once
+        assertSame(endpoint, cache.resolve("https://example.com", "secret", false, 500L));
+        assertEquals(1, resolutions.get());
+
+        // the token and the trust mode are part of the target
+        ResolvedEndpoint otherToken = cache.resolve("https://example.com", "other", false, 500L);
+        assertNotEquals(endpoint.getTargetKey(), otherToken.getTargetKey());
+        assertEquals(2, resolutions.get());
+
+        // entries expire
+        cache.resolve("https://example.com", "secret", false, 1500L);
+        assertEquals(3, resolutions.get());
+
+        // failures are cached too
+        ResolvedEndpoint insecure = cache.resolve("http://example.com", "secret", false, 0L);
+        assertTrue(insecure.isFailed());
+        assertInstanceOf(ProtocolException.class, insecure.newFailure());
+        assertSame(insecure, cache.resolve("http://example.com", "secret", false, 500L));
+        assertEquals(3, resolutions.get());
+        // but every exchange gets its own exception
+        assertNotSame(insecure.newFailure(), insecure.newFailure());
+
+        ResolvedEndpoint invalid = cache.resolve("not a url", "secret", false, 0L);
+        assertInstanceOf(IllegalArgumentException.class, invalid.newFailure());
+        assertEquals("URL Validation failed", invalid.newFailure().getMessage());
+    }
+
+    @Test
+    public void testMissingMetadata() {
+        ResolvedEndpointCache cache = new ResolvedEndpointCache("test", 2, 1000L,
+                (targetUrl, token) -> new ResolvedEndpoint(targetUrl, null));
+
+        // routed to the target URL validation failures, as before the cache
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        assertThrows(IllegalArgumentException.class, () -> cache.process(exchange));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StageTimerTest extends ExchangeTestSupport {
+
+    @Test
+    public void testStages() throws Exception {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.getIn().setHeader(KafkaConstants.TIMESTAMP, System.currentTimeMillis() - 5000);
+
+        StageTimer.ingress(exchange);
+        assertTrue(StageTimer.durations(exchange)[StageTimer.BROKER] >= 5000);
+
+        Thread.sleep(20);
+        StageTimer.handler(exchange);
+        assertNotNull(exchange.getProperty(StageTimer.TIME_IN));
+        assertTrue(StageTimer.durations(exchange)[StageTimer.INGRESS] >= 20);
+
+        StageTimer.send(exchange);
+        long handler = StageTimer.durations(exchange)[StageTimer.HANDLER];
+        assertTrue(handler >= 0);
+        StageTimer.response(exchange);
+        assertTrue(StageTimer.durations(exchange)[StageTimer.RESPONSE] >= 0);
+
+        // the handler stage ends with the first request
+        Thread.sleep(20);
+        StageTimer.send(exchange);
+        assertEquals(handler, StageTimer.durations(exchange)[StageTimer.HANDLER]);
+
+        assertTrue(StageTimer.complete(exchange) >= 5040);
+    }
+
+    @Test
+    public void testCopies() {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.getIn().setHeader(KafkaConstants.TIMESTAMP, System.currentTimeMillis() - 5000);
+        StageTimer.ingress(exchange);
+        StageTimer.handler(exchange);
+
+        // the durations timed on a copy are its own
+        Exchange copy = exchange.copy();
+        StageTimer.send(copy);
+        assertTrue(StageTimer.durations(copy)[StageTimer.HANDLER] >= 0);
+        assertEquals(-1L, StageTimer.durations(exchange)[StageTimer.HANDLER]);
+        assertTrue(StageTimer.durations(exchange)[StageTimer.BROKER] >= 5000);
+    }
+
+    @Test
+    public void testCoalescedEvents() {
+        // each event is timed from its own Kafka record
+        long now = System.currentTimeMillis();
+        assertTrue(StageTimer.complete(now - 5000) >= 5000);
+        long latency = StageTimer.complete(now - 100);
+        assertTrue(latency >= 100 && latency < 5000);
+        assertEquals(-1L, StageTimer.complete((Long) null));
+    }
+
+    @Test
+    public void testWithoutRecordTimestamp() {
+        // replayed from the spool, only timed from the handler on
+        Exchange exchange = createExchangeWithBody("");
+        StageTimer.handler(exchange);
+        StageTimer.send(exchange);
+
+        long[] durations = StageTimer.durations(exchange);
+        assertEquals(-1L, durations[StageTimer.BROKER]);
+        assertEquals(-1L, durations[StageTimer.INGRESS]);
+        assertTrue(durations[StageTimer.HANDLER] >= 0);
+        assertEquals(-1L, StageTimer.complete(exchange));
+    }
+}
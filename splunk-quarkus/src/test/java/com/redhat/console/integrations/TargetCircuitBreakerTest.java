@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.spi.Synchronization;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TargetCircuitBreakerTest extends ExchangeTestSupport {
+
+    private static final String TARGET_URL = "https://splunk.example.com";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DeliveryMetrics deliveryMetrics = new DeliveryMetrics("splunk", 2);
+
+    @BeforeEach
+    public void addRegistry() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    public void removeRegistry() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    public void testCircuit() throws Exception {
+        TargetCircuitBreaker circuitBreaker = new TargetCircuitBreaker(2, 100L, 1, 60000L, deliveryMetrics);
+
+        // a 4xx shows that the target is up
+        deliver(circuitBreaker, new HttpOperationFailedException(TARGET_URL, 401, "Unauthorized", null, null, null));
+        deliver(circuitBreaker, new ConnectException("Connection refused"));
+        assertEquals(TargetCircuitBreaker.State.CLOSED, circuitBreaker.getState(TARGET_URL));
+
+        deliver(circuitBreaker, new HttpOperationFailedException(TARGET_URL, 503, "Service Unavailable", null, null, null));
+        assertEquals(TargetCircuitBreaker.State.OPEN, circuitBreaker.getState(TARGET_URL));
+        assertThrows(CircuitBreakerOpenException.class, () -> circuitBreaker.process(targetExchange()));
+
+        // a single trial once the open duration elapsed, whose failure opens the circuit again
+        Thread.sleep(150L);
+        Exchange trial = targetExchange();
+        circuitBreaker.process(trial);
+        assertEquals(TargetCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(TARGET_URL));
+        assertThrows(CircuitBreakerOpenException.class, () -> circuitBreaker.process(targetExchange()));
+        done(trial, new IOException("Read timed out"));
+        assertEquals(TargetCircuitBreaker.State.OPEN, circuitBreaker.getState(TARGET_URL));
+
+        // and whose success closes it
+        Thread.sleep(150L);
+        deliver(circuitBreaker, null);
+        assertEquals(TargetCircuitBreaker.State.CLOSED, circuitBreaker.getState(TARGET_URL));
+    }
+
+    @Test
+    public void testRejectedDeliveries() throws Exception {
+        TargetCircuitBreaker circuitBreaker = new TargetCircuitBreaker(2, 100L, 1, 60000L, deliveryMetrics);
+
+        // the deliveries rejected before reaching the target say nothing about it
+        deliver(circuitBreaker, new DeliveryRejectedException("Rate limited by " + TARGET_URL));
+        deliver(circuitBreaker, new DeliveryRejectedException("Too many concurrent deliveries to " + TARGET_URL));
+        deliver(circuitBreaker, new DeliveryRejectedException("Too many deliveries waiting for splunk.example.com"));
+        assertEquals(TargetCircuitBreaker.State.CLOSED, circuitBreaker.getState(TARGET_URL));
+        assertFalse(TargetCircuitBreaker.isUnavailable(new DeliveryRejectedException("Rate limited")));
+        assertTrue(TargetCircuitBreaker.isUnavailable(new IOException("Read timed out")));
+    }
+
+    @Test
+    public void testRejectedTrial() throws Exception {
+        TargetCircuitBreaker circuitBreaker = new TargetCircuitBreaker(1, 100L, 1, 60000L, deliveryMetrics);
+
+        deliver(circuitBreaker, new IOException("Read timed out"));
+        assertEquals(TargetCircuitBreaker.State.OPEN, circuitBreaker.getState(TARGET_URL));
+
+        // a trial rejected before reaching the target neither closes the circuit nor uses up the trial
+        Thread.sleep(150L);
+        deliver(circuitBreaker, new DeliveryRejectedException("Too many concurrent deliveries to " + TARGET_URL));
+        assertEquals(TargetCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(TARGET_URL));
+        Exchange trial = targetExchange();
+        circuitBreaker.process(trial);
+        assertThrows(CircuitBreakerOpenException.class, () -> circuitBreaker.process(targetExchange()));
+        done(trial, null);
+        assertEquals(TargetCircuitBreaker.State.CLOSED, circuitBreaker.getState(TARGET_URL));
+    }
+
+    @Test
+    public void testStateGauge() throws Exception {
+        TargetCircuitBreaker circuitBreaker = new TargetCircuitBreaker(1, 60000L, 1, 60000L, deliveryMetrics);
+        // the host is among the busiest ones once a request was sent to it
+        assertEquals("splunk.example.com", deliveryMetrics.tag("splunk.example.com"));
+
+        deliver(circuitBreaker, null);
+        assertEquals(0.0, registry.get("integrations.circuit-breaker.state")
+                .tags("integration", "splunk", "target", "splunk.example.com")
+                .gauge().value());
+        deliver(circuitBreaker, new IOException("Read timed out"));
+        assertEquals(2.0, registry.get("integrations.circuit-breaker.state")
+                .tags("target", "splunk.example.com")
+                .gauge().value());
+    }
+
+    @Test
+    public void testIdleExpiry() throws Exception {
+        TargetCircuitBreaker circuitBreaker = new TargetCircuitBreaker(2, 60000L, 1, 100L, deliveryMetrics);
+
+        deliver(circuitBreaker, new IOException("Read timed out"));
+        deliver(circuitBreaker, new IOException("Read timed out"));
+        assertEquals(TargetCircuitBreaker.State.OPEN, circuitBreaker.getState(TARGET_URL));
+        assertEquals(1, circuitBreaker.getCircuitCount());
+
+        // the circuits unused for the idle expiry are dropped by the next delivery
+        Thread.sleep(150L);
+        Exchange other = targetExchange();
+        other.setProperty("targetUrl", "https://other.example.com");
+        circuitBreaker.process(other);
+        assertEquals(1, circuitBreaker.getCircuitCount());
+        assertEquals(TargetCircuitBreaker.State.CLOSED, circuitBreaker.getState(TARGET_URL));
+    }
+
+    private void deliver(TargetCircuitBreaker circuitBreaker, Exception failure) throws Exception {
+        Exchange exchange = targetExchange();
+        circuitBreaker.process(exchange);
+        done(exchange, failure);
+    }
+
+    private static void done(Exchange exchange, Exception failure) {
+        // the error routes handle the exception, which is then only kept as the caught exception
+        exchange.setProperty(Exchange.EXCEPTION_CAUGHT, failure);
+        for (Synchronization synchronization : exchange.adapt(ExtendedExchange.class).handoverCompletions()) {
+            synchronization.onComplete(exchange);
+        }
+    }
+
+    private Exchange targetExchange() {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.setProperty("targetUrl", TARGET_URL);
+        return exchange;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TargetRateLimiterTest extends ExchangeTestSupport {
+
+    private static final String TARGET_URL = "https://splunk.example.com";
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    public void shutdownScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        long now = 1_000_000_000_000L;
+        assertEquals(0L, TargetRateLimiter.parseRetryAfter(null, now));
+        assertEquals(120_000L, TargetRateLimiter.parseRetryAfter("120", now));
+        assertEquals(0L, TargetRateLimiter.parseRetryAfter("-5", now));
+        // Sun, 09 Sep 2001 01:46:40 GMT is now, 30 seconds later
+        assertEquals(30_000L, TargetRateLimiter.parseRetryAfter("Sun, 09 Sep 2001 01:47:10 GMT", now));
+        assertEquals(0L, TargetRateLimiter.parseRetryAfter("not a date", now));
+    }
+
+    @Test
+    public void testIsThrottled() {
+        assertTrue(TargetRateLimiter.isThrottled(failedExchange(429, Map.of())));
+        assertTrue(TargetRateLimiter.isThrottled(failedExchange(503, Map.of("Retry-After", "10"))));
+        assertFalse(TargetRateLimiter.isThrottled(failedExchange(503, Map.of())));
+        assertFalse(TargetRateLimiter.isThrottled(failedExchange(500, Map.of())));
+    }
+
+    @Test
+    public void testThrottledRequestsAreDeferred() throws Exception {
+        TargetRateLimiter rateLimiter = new TargetRateLimiter(10, 1, 60_000L, 5_000L, 2, scheduler, Runnable::run);
+
+        // not limited until the target throttles the requests
+        assertTrue(rateLimiter.process(targetExchange(), doneSync -> {
+        }));
+
+        Exchange throttled = failedExchange(429, Map.of("Retry-After", "1"));
+        rateLimiter.onThrottled(throttled);
+        assertNull(throttled.getProperty(Exchange.EXCEPTION_CAUGHT));
+        assertEquals(10, rateLimiter.getRate(TARGET_URL));
+
+        // the retry waits for the Retry-After time without holding the thread
+        CountDownLatch resumed = new CountDownLatch(1);
+        long start = System.nanoTime();
+        assertFalse(rateLimiter.process(throttled, doneSync -> resumed.countDown()));
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1_000));
+        assertTrue(throttled.getProperty(TargetRateLimiter.DEFERRED_TIME, Long.class) > 0);
+
+        // a new 429 halves the rate and the request fails once it has been throttled maxAttempts times
+        HttpOperationFailedException exception = new HttpOperationFailedException(TARGET_URL, 429, "Too Many Requests",
+                null, null, null);
+        throttled.setProperty(Exchange.EXCEPTION_CAUGHT, exception);
+        assertSame(exception, assertThrows(HttpOperationFailedException.class, () -> rateLimiter.onThrottled(throttled)));
+        assertEquals(5, rateLimiter.getRate(TARGET_URL));
+
+        // a request which would have to wait for too long fails right away
+        Exchange paused = failedExchange(429, Map.of("Retry-After", "60"));
+        rateLimiter.onThrottled(paused);
+        assertTrue(rateLimiter.process(paused, doneSync -> {
+        }));
+        assertTrue(paused.getException() instanceof IOException);
+    }
+
+    @Test
+    public void testRejectedRequestsTakeNoToken() throws Exception {
+        TargetRateLimiter rateLimiter = new TargetRateLimiter(10, 1, 60_000L, 150L, 2, scheduler, Runnable::run);
+        rateLimiter.onThrottled(failedExchange(429, Map.of()));
+
+        // the first request waits for the next token, the next ones would wait for too long
+        assertFalse(rateLimiter.process(targetExchange(), doneSync -> {
+        }));
+        for (int i = 0; i < 10; i++) {
+            Exchange rejected = targetExchange();
+            assertTrue(rateLimiter.process(rejected, doneSync -> {
+            }));
+            // retried or spooled instead, not before its turn
+            assertTrue(rejected.getException() instanceof DeliveryDeferredException);
+            assertTrue(((DeliveryDeferredException) rejected.getException()).getDelay() > 150L);
+        }
+
+        // the rejected requests didn't run the bucket into debt
+        Thread.sleep(250L);
+        Exchange next = targetExchange();
+        assertTrue(rateLimiter.process(next, doneSync -> {
+        }));
+        assertNull(next.getException());
+    }
+
+    private Exchange failedExchange(int statusCode, Map<String, String> responseHeaders) {
+        Exchange exchange = targetExchange();
+        exchange.setProperty(Exchange.EXCEPTION_CAUGHT,
+                new HttpOperationFailedException(TARGET_URL, statusCode, "Throttled", null, responseHeaders, null));
+        return exchange;
+    }
+
+    private Exchange targetExchange() {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.setProperty("targetUrl", TARGET_URL);
+        return exchange;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TargetSpoolTest extends ExchangeTestSupport {
+
+    private static final String TARGET_URL = "https://splunk.example.com";
+    // room for 4 records of 8 bytes
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReplayInOrder() throws Exception {
+        TargetSpool spool = newSpool(SEGMENT_SIZE * 3);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(spool.keep(failedExchange("record-" + i)));
+        }
+        // not the failures which are not transient
+        Exchange badRequest = failedExchange("record-6");
+        badRequest.setProperty(Exchange.EXCEPTION_CAUGHT,
+                new HttpOperationFailedException(TARGET_URL, 400, "Bad Request", null, null, null));
+        assertFalse(spool.keep(badRequest));
+        assertEquals(6, spool.getLiveRecords(TARGET_URL));
+
+        // a single event at first, and nothing more while it is in flight
+        List<TargetSpool.SpooledRecord> records = spool.replay();
+        assertEquals(List.of("record-0"), payloads(records));
+        assertTrue(spool.replay().isEmpty());
+
+        // the target is still unavailable, the event stays in the spool
+        Exchange replayed = replayedExchange(records.get(0));
+        replayed.setProperty(Exchange.EXCEPTION_CAUGHT, new IOException("Connection refused"));
+        assertTrue(spool.keep(replayed));
+        assertEquals(6, spool.getLiveRecords(TARGET_URL));
+
+        // the target is back, twice as many events each time
+        records = spool.replay();
+        assertEquals(List.of("record-0"), payloads(records));
+        acknowledge(spool, records);
+        records = spool.replay();
+        assertEquals(List.of("record-1", "record-2"), payloads(records));
+        acknowledge(spool, records);
+        records = spool.replay();
+        assertEquals(List.of("record-3", "record-4", "record-5"), payloads(records));
+        acknowledge(spool, records);
+
+        assertEquals(0, spool.getLiveRecords(TARGET_URL));
+        // only the segment being written is left
+        assertEquals(SEGMENT_SIZE, spool.getUsedBytes());
+    }
+
+    @Test
+    public void testDeferredDeliveries() throws Exception {
+        TargetSpool spool = newSpool(SEGMENT_SIZE * 3);
+        Exchange deferred = failedExchange("record-0");
+        deferred.setProperty(Exchange.EXCEPTION_CAUGHT, new DeliveryDeferredException("Rate limited", 200L));
+        assertTrue(spool.keep(deferred));
+
+        // not replayed before the turn of the deferred delivery
+        assertTrue(spool.replay().isEmpty());
+        Thread.sleep(250L);
+        assertEquals(List.of("record-0"), payloads(spool.replay()));
+    }
+
+    @Test
+    public void testDeletedSegments() throws Exception {
+        TargetSpool spool = newSpool(SEGMENT_SIZE * 3);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(spool.keep(failedExchange("record-" + i)));
+        }
+        assertEquals(2, segmentFiles().size());
+
+        // the first segment is deleted once its events are done with
+        List<TargetSpool.SpooledRecord> records = spool.replay();
+        acknowledge(spool, records);
+        acknowledge(spool, spool.replay());
+        assertEquals(2, segmentFiles().size());
+        acknowledge(spool, spool.replay().subList(0, 1));
+        assertEquals(1, segmentFiles().size());
+        assertEquals(2, spool.getLiveRecords(TARGET_URL));
+
+        // an event handed out twice may still be acknowledged once its segment is gone
+        acknowledge(spool, records);
+        assertEquals(2, spool.getLiveRecords(TARGET_URL));
+    }
+
+    @Test
+    public void testBoundedDiskUsage() {
+        TargetSpool spool = newSpool(SEGMENT_SIZE * 2);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(spool.keep(failedExchange("record-" + i)));
+        }
+        assertFalse(spool.keep(failedExchange("record-8")));
+        assertEquals(SEGMENT_SIZE * 2, spool.getUsedBytes());
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        TargetSpool spool = newSpool(SEGMENT_SIZE * 3);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(spool.keep(failedExchange("record-" + i)));
+        }
+        acknowledge(spool, spool.replay());
+
+        // the last record of the second segment was not entirely written
+        Path lastSegment;
+        try (Stream<Path> files = Files.walk(directory)) {
+            lastSegment = files.filter(file -> file.toString().endsWith(".segment")).sorted()
+                    .collect(Collectors.toList()).get(1);
+        }
+        byte[] bytes = Files.readAllBytes(lastSegment);
+        bytes[16 + 8] ^= 1;
+        Files.write(lastSegment, bytes);
+
+        TargetSpool recovered = newSpool(SEGMENT_SIZE * 3);
+        recovered.recover();
+        assertEquals(4, recovered.getLiveRecords(TARGET_URL));
+        assertEquals(List.of("record-1"), payloads(recovered.replay()));
+
+        // the torn record is written over
+        assertTrue(recovered.keep(failedExchange("record-6")));
+        TargetSpool recoveredAgain = newSpool(SEGMENT_SIZE * 3);
+        recoveredAgain.recover();
+        assertEquals(5, recoveredAgain.getLiveRecords(TARGET_URL));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".segment")).collect(Collectors.toList());
+        }
+    }
+
+    private TargetSpool newSpool(long maxBytes) {
+        return new TargetSpool(true, directory, SEGMENT_SIZE, maxBytes, 4, 60_000L);
+    }
+
+    private Exchange failedExchange(String record) {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.setProperty("targetUrl", TARGET_URL);
+        exchange.setProperty(Exchange.EXCEPTION_CAUGHT, new IOException("Connection refused"));
+        exchange.setProperty(DelayedRetry.RECORD, record);
+        return exchange;
+    }
+
+    private Exchange replayedExchange(TargetSpool.SpooledRecord record) {
+        Exchange exchange = createExchangeWithBody(record);
+        TargetSpool.prepareReplay(exchange);
+        exchange.setProperty("targetUrl", TARGET_URL);
+        return exchange;
+    }
+
+    private void acknowledge(TargetSpool spool, List<TargetSpool.SpooledRecord> records) {
+        for (TargetSpool.SpooledRecord record : records) {
+            spool.acknowledge(replayedExchange(record));
+        }
+    }
+
+    private static List<String> payloads(List<TargetSpool.SpooledRecord> records) {
+        return records.stream().map(TargetSpool.SpooledRecord::getPayload).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.console.integrations;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TrafficAwareKeepAliveStrategyTest {
+
+    @Test
+    public void testKeepAliveDuration() {
+        TrafficAwareKeepAliveStrategy strategy = new TrafficAwareKeepAliveStrategy(5000L, 60000L);
+
+        // nothing is known yet about the target
+        assertEquals(5000L, strategy.getKeepAliveDuration("splunk.example.com:443", -1L, 100000L));
+        // a request every 4 seconds keeps the connection alive for 3 intervals
+        assertEquals(12000L, strategy.getKeepAliveDuration("splunk.example.com:443", -1L, 104000L));
+        // a rarely used target stays within the bounds
+        strategy.getKeepAliveDuration("servicenow.example.com:443", -1L, 100000L);
+        assertEquals(60000L, strategy.getKeepAliveDuration("servicenow.example.com:443", -1L, 200000L));
+
+        // the server hint wins, within the maximum
+        assertEquals(30000L, strategy.getKeepAliveDuration("splunk.example.com:443", 30000L, 108000L));
+        assertEquals(60000L, strategy.getKeepAliveDuration("splunk.example.com:443", 120000L, 112000L));
+    }
+
+    @Test
+    public void testIdleTargets() {
+        TrafficAwareKeepAliveStrategy strategy = new TrafficAwareKeepAliveStrategy(5000L, 60000L);
+        strategy.getKeepAliveDuration("splunk.example.com:443", -1L, 200000L);
+        strategy.getKeepAliveDuration("servicenow.example.com:443", -1L, 300000L);
+        assertEquals(2, strategy.getTargetCount());
+
+        // the target that was not heard from for 3 maximum keep alive durations is forgotten
+        strategy.getKeepAliveDuration("servicenow.example.com:443", -1L, 390000L);
+        assertEquals(1, strategy.getTargetCount());
+        assertEquals(5000L, strategy.getKeepAliveDuration("splunk.example.com:443", -1L, 390000L));
+    }
+}
@@ -0,0 +1,116 @@
+package com.redhat.console.integrations.splunk;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.apache.camel.util.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static com.redhat.console.integrations.splunk.SplunkIntegration.TARGET_KEY;
+import static com.redhat.console.integrations.splunk.SplunkUrlCleaner.TARGET_URL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SplunkAckRegistryTest extends ExchangeTestSupport {
+
+    @Test
+    void testAcknowledge() throws Exception {
+        SplunkAckRegistry registry = new SplunkAckRegistry(true, 1, 100, 60000L, 60000L);
+
+        // two chunks are sent for the same delivery, each one gets an ackId
+        Exchange delivery = createDelivery();
+        registry.prepare(delivery);
+        String channel = delivery.getIn().getHeader(SplunkAckRegistry.CHANNEL_HEADER, String.class);
+        delivery.getIn().setBody("{\"text\":\"Success\",\"code\":0,\"ackId\":1}");
+        SplunkAckRegistry.recordAck(delivery);
+        delivery.getIn().setBody("{\"text\":\"Success\",\"code\":0,\"ackId\":2}");
+        SplunkAckRegistry.recordAck(delivery);
+        assertEquals(List.of(1L, 2L), delivery.getProperty(SplunkAckRegistry.ACK_IDS));
+        registry.register(delivery);
+
+        // the channel only allows one pending delivery
+        assertThrows(IOException.class, () -> registry.prepare(createDelivery()));
+
+        // both acks are polled in a single request on the channel
+        List<SplunkAckRegistry.AckPoll> polls = registry.pollRequests();
+        assertEquals(1, polls.size());
+        Exchange poll = createExchangeWithBody(polls.get(0));
+        SplunkAckRegistry.preparePoll(poll);
+        assertEquals("channel=" + channel, poll.getIn().getHeader(Exchange.HTTP_QUERY));
+        assertEquals(SplunkAckRegistry.SERVICES_COLLECTOR_ACK, poll.getIn().getHeader(Exchange.HTTP_PATH));
+        assertEquals("{\"acks\":[1,2]}", poll.getIn().getBody(String.class));
+
+        // the delivery is only complete once all its acks are confirmed
+        poll.getIn().setBody("{\"acks\":{\"1\":true,\"2\":false}}");
+        assertTrue(registry.acknowledge(poll).isEmpty());
+        poll.getIn().setBody("{\"acks\":{\"2\":true}}");
+        List<SplunkAckRegistry.PendingDelivery> delivered = registry.acknowledge(poll);
+        assertEquals(1, delivered.size());
+        assertTrue(registry.pollRequests().isEmpty());
+
+        // the original headers and properties are restored for the history record
+        Exchange restored = createExchangeWithBody(delivered.get(0));
+        SplunkAckRegistry.PendingDelivery.restore(restored);
+        assertEquals("some-id", restored.getIn().getHeader("ce-id"));
+        assertEquals("https://splunk.example.com", restored.getProperty(TARGET_URL));
+        assertTrue(registry.expire().isEmpty());
+    }
+
+    @Test
+    void testDisabled() throws Exception {
+        SplunkAckRegistry registry = new SplunkAckRegistry(true, 10, 100, 60000L, 60000L);
+
+        // the target can opt out
+        Exchange delivery = createDelivery();
+        delivery.getIn().getHeader("metadata", JsonObject.class).put(SplunkAckRegistry.ACK_METADATA, "false");
+        registry.prepare(delivery);
+        assertNull(delivery.getIn().getHeader(SplunkAckRegistry.CHANNEL_HEADER));
+        delivery.getIn().setBody("{\"text\":\"Success\",\"code\":0,\"ackId\":1}");
+        SplunkAckRegistry.recordAck(delivery);
+        assertNull(delivery.getProperty(SplunkAckRegistry.ACK_IDS));
+    }
+
+    @Test
+    void testIdleChannels() throws Exception {
+        SplunkAckRegistry registry = new SplunkAckRegistry(true, 10, 100, 60000L, 0L);
+
+        // a channel with pending acknowledgements is kept
+        Exchange delivery = createDelivery();
+        registry.prepare(delivery);
+        String channel = delivery.getIn().getHeader(SplunkAckRegistry.CHANNEL_HEADER, String.class);
+        delivery.getIn().setBody("{\"text\":\"Success\",\"code\":0,\"ackId\":1}");
+        SplunkAckRegistry.recordAck(delivery);
+        registry.register(delivery);
+        assertTrue(registry.expire().isEmpty());
+        assertEquals(1, registry.getChannelCount());
+
+        // and dropped once idle
+        Exchange poll = createExchangeWithBody(registry.pollRequests().get(0));
+        SplunkAckRegistry.preparePoll(poll);
+        poll.getIn().setBody("{\"acks\":{\"1\":true}}");
+        assertEquals(1, registry.acknowledge(poll).size());
+        assertTrue(registry.expire().isEmpty());
+        assertEquals(0, registry.getChannelCount());
+
+        // the next delivery to the target gets a new channel
+        Exchange next = createDelivery();
+        registry.prepare(next);
+        assertNotEquals(channel, next.getIn().getHeader(SplunkAckRegistry.CHANNEL_HEADER, String.class));
+    }
+
+    private Exchange createDelivery() {
+        Exchange exchange = createExchangeWithBody("");
+        exchange.getIn().setHeader("ce-id", "some-id");
+        exchange.getIn().setHeader("Authorization", "Splunk some-token");
+        exchange.getIn().setHeader("metadata", new JsonObject(Map.of("trustAll", "false")));
+        exchange.setProperty(TARGET_URL, "https://splunk.example.com");
+        exchange.setProperty(TARGET_KEY, "https://splunk.example.com|false|hash");
+        return exchange;
+    }
+}
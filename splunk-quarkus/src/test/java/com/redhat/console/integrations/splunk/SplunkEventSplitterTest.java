@@ -0,0 +1,48 @@
+package com.redhat.console.integrations.splunk;
+
+import java.util.List;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.camel.util.json.JsonArray;
+import org.apache.camel.util.json.Jsoner;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SplunkEventSplitterTest {
+
+    @Test
+    void testSplit() throws Exception {
+        org.apache.camel.util.json.JsonObject action = (org.apache.camel.util.json.JsonObject) Jsoner.deserialize(
+                "{\"bundle\":\"rhel\",\"application\":\"advisor\","
+                        + "\"events\":[{\"payload\":{\"n\":1}},{\"payload\":{\"n\":2}}]}");
+        JsonArray events = action.getCollection("events");
+
+        List<String> hecEvents = SplunkEventSplitter.split(action, events);
+
+        assertEquals(2, hecEvents.size());
+        for (int i = 0; i < hecEvents.size(); i++) {
+            JsonObject hecEvent = new JsonObject(hecEvents.get(i));
+            assertEquals("eventing", hecEvent.getString("source"));
+            assertEquals("Insights event", hecEvent.getString("sourcetype"));
+
+            JsonObject event = hecEvent.getJsonObject("event");
+            assertEquals("rhel", event.getString("bundle"));
+            assertEquals("advisor", event.getString("application"));
+            assertEquals(1, event.getJsonArray("events").size());
+            assertEquals(i + 1, event.getJsonArray("events").getJsonObject(0).getJsonObject("payload").getInteger("n"));
+        }
+
+        // the original action is left untouched
+        assertEquals(2, action.getCollection("events").size());
+
+        // an action with nothing but events and an action without events
+        action = (org.apache.camel.util.json.JsonObject) Jsoner.deserialize("{\"events\":[{}]}");
+        hecEvents = SplunkEventSplitter.split(action, action.getCollection("events"));
+        assertEquals(1, hecEvents.size());
+        assertEquals(1, new JsonObject(hecEvents.get(0)).getJsonObject("event").getJsonArray("events").size());
+
+        assertTrue(SplunkEventSplitter.split(action, new JsonArray()).isEmpty());
+    }
+}
@@ -0,0 +1,57 @@
+package com.redhat.console.integrations.splunk;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit5.ExchangeTestSupport;
+import org.apache.camel.util.json.JsonObject;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SplunkGzipCompressorTest extends ExchangeTestSupport {
+
+    @Test
+    void testCompress() throws Exception {
+        SplunkGzipCompressor compressor = new SplunkGzipCompressor(true, 100);
+        byte[] body = "{\"event\": \"some event\"}".repeat(50).getBytes(StandardCharsets.UTF_8);
+
+        // large enough bodies are compressed
+        Exchange exchange = createExchangeWithBody(body);
+        compressor.process(exchange);
+
+        HttpEntity entity = exchange.getIn().getBody(HttpEntity.class);
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        byte[] compressed = EntityUtils.toByteArray(entity);
+        assertTrue(compressed.length < body.length);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(body, gzip.readAllBytes());
+        }
+
+        // the non-blocking client gets the compressed bytes and the header
+        exchange = createExchangeWithBody(body);
+        new SplunkGzipCompressor(true, 100, false).process(exchange);
+        assertEquals("gzip", exchange.getIn().getHeader(Exchange.CONTENT_ENCODING));
+        assertArrayEquals(compressed, exchange.getIn().getBody(byte[].class));
+
+        // small bodies are left untouched
+        byte[] smallBody = "{}".getBytes(StandardCharsets.UTF_8);
+        exchange = createExchangeWithBody(smallBody);
+        compressor.process(exchange);
+        assertSame(smallBody, exchange.getIn().getBody());
+
+        // the target can opt out
+        exchange = createExchangeWithBody(body);
+        exchange.getIn().setHeader("metadata", new JsonObject(Map.of(SplunkGzipCompressor.GZIP_METADATA, "false")));
+        compressor.process(exchange);
+        assertSame(body, exchange.getIn().getBody());
+    }
+}
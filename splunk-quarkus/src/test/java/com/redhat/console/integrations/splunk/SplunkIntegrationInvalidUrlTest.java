@@ -52,7 +52,7 @@ public class SplunkIntegrationInvalidUrlTest extends CamelQuarkusTestSupport {
     @Test
     void testInvalidUrl() throws Exception {
         // Mock all the "https" endpoints to avoid failures.
-        AdviceWith.adviceWith(this.context, "handler", a -> a.mockEndpoints("https:*"));
+        AdviceWith.adviceWith(this.context, "splunkSend", a -> a.mockEndpoints("https:*"));
 
         // Make the ".to" output of the "secureConnectionFailed" route to a
         // mocked endpoint,
@@ -39,7 +39,7 @@ public class SplunkIntegrationNormalTest extends CamelQuarkusTestSupport {
      */
     @Test
     void testNormal() throws Exception {
-        AdviceWith.adviceWith(this.context, "handler", a -> a.mockEndpoints("https:*"));
+        AdviceWith.adviceWith(this.context, "splunkSend", a -> a.mockEndpoints("https:*"));
         AdviceWith.adviceWith(this.context, "return", AdviceWithRouteBuilder::mockEndpoints);
         AdviceWith.adviceWith(this.context, "success", AdviceWithRouteBuilder::mockEndpoints);
 
@@ -0,0 +1,83 @@
+package com.redhat.console.integrations.splunk;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.console.integrations.CloudEventDecoder;
+import com.redhat.console.integrations.testhelpers.CloudEventTestHelper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.core.json.JsonObject;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(SplunkIntegrationPartialDeliveryTest.class)
+public class SplunkIntegrationPartialDeliveryTest extends CamelQuarkusTestSupport {
+    /**
+     * Signal Camel that when we manipulate the endpoints the routes shouldn't be restarted.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isUseAdviceWith() {
+        return true;
+    }
+
+    /**
+     * Specifically creates the Splunk integration's routes.
+     *
+     * @return the Splunk integration's route builder.
+     */
+    @Override
+    protected RouteBuilder createRouteBuilder() {
+        return new SplunkIntegration();
+    }
+
+    /**
+     * Tests that when a chunk fails after a previous chunk was accepted by Splunk, the batch is neither retried nor
+     * spooled, and the partial delivery is reported as such.
+     *
+     * @throws Exception if any unexpected error occurs.
+     */
+    @Test
+    void testPartialDelivery() throws Exception {
+        // The first request is accepted and the second one fails.
+        AdviceWith.adviceWith(this.context, "splunkSend", a -> a.mockEndpointsAndSkip("https:*"));
+        final MockEndpoint mockedDynamicEndpoint = getMockEndpoint("mock:https:dynamic");
+        mockedDynamicEndpoint.expectedMessageCount(2);
+        mockedDynamicEndpoint.whenExchangeReceived(2, exchange -> {
+            throw new IOException("Connection reset");
+        });
+
+        // Watch the history record on its way to the "return" route.
+        AdviceWith.adviceWith(this.context, "deliveryFailed",
+                a -> a.weaveByToUri("direct://return").before().to("mock:deliveryFailed"));
+        AdviceWith.adviceWith(this.context, "return-producer", a -> a.mockEndpointsAndSkip("kafka:*"));
+
+        // Two events sent with a request each.
+        final JsonObject cloudEvent = CloudEventTestHelper.buildTestCloudEvent();
+        final JsonObject data = cloudEvent.getJsonObject(CloudEventTestHelper.FIELD_DATA);
+        data.getJsonArray("events").add(data.getJsonArray("events").getJsonObject(0).copy());
+        data.getJsonObject(CloudEventTestHelper.FIELD_NOTIF_METADATA).put(SplunkBatchChunker.MAX_EVENTS_METADATA, "1");
+
+        final Exchange exchange = createExchangeWithBody(cloudEvent.toString());
+        new CloudEventDecoder().process(exchange);
+
+        final MockEndpoint mockedDeliveryFailed = getMockEndpoint("mock:deliveryFailed");
+        mockedDeliveryFailed.expectedMessageCount(1);
+
+        this.template.send("direct:handler", exchange);
+
+        MockEndpoint.assertIsSatisfied(5000, TimeUnit.MILLISECONDS, mockedDynamicEndpoint, mockedDeliveryFailed);
+
+        CloudEventTestHelper.assertOutcomeAndSuccessfulAre(
+                mockedDeliveryFailed.getExchanges().get(0).getIn().getBody(String.class),
+                "Partially delivered, 1 of 2 events were accepted by Splunk (1 of 2 requests) before: Connection reset",
+                false);
+    }
+}
@@ -0,0 +1,95 @@
+package com.redhat.console.integrations.splunk;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.console.integrations.CloudEventDecoder;
+import com.redhat.console.integrations.KafkaOffsetWatermark;
+import com.redhat.console.integrations.testhelpers.CloudEventTestHelper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
+import org.apache.camel.spi.Synchronization;
+import org.junit.jupiter.api.Test;
+
+import static org.awaitility.Awaitility.await;
+
+@QuarkusTest
+@TestProfile(SplunkIntegrationUnexpectedFailureTest.class)
+public class SplunkIntegrationUnexpectedFailureTest extends CamelQuarkusTestSupport {
+    /**
+     * Signal Camel that when we manipulate the endpoints the routes shouldn't be restarted.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isUseAdviceWith() {
+        return true;
+    }
+
+    /**
+     * Specifically creates the Splunk integration's routes.
+     *
+     * @return the Splunk integration's route builder.
+     */
+    @Override
+    protected RouteBuilder createRouteBuilder() {
+        return new SplunkIntegration();
+    }
+
+    /**
+     * Tests that when the delivery fails with an exception that no error route expects, a failed history record is
+     * written and the Kafka record is released, so that its offset is committed.
+     *
+     * @throws Exception if any unexpected error occurs.
+     */
+    @Test
+    void testUnexpectedFailure() throws Exception {
+        // The delivery fails with an exception that no error route maps.
+        AdviceWith.adviceWith(this.context, "splunkSend",
+                a -> a.weaveAddFirst().throwException(new IllegalStateException("Unexpected failure")));
+
+        // Watch the history record on its way to the "return" route.
+        AdviceWith.adviceWith(this.context, "deliveryError",
+                a -> a.weaveByToUri("direct://return").before().to("mock:deliveryError"));
+
+        // Skip the Kafka producer, the records are released once it is done.
+        AdviceWith.adviceWith(this.context, "return-producer", a -> a.mockEndpointsAndSkip("kafka:*"));
+
+        final Exchange exchange = createExchangeWithBody(CloudEventTestHelper.buildTestCloudEvent().toString());
+        new CloudEventDecoder().process(exchange);
+
+        // Track the exchange as if it had been received from Kafka.
+        final List<Long> commits = new CopyOnWriteArrayList<>();
+        exchange.getIn().setHeader(KafkaConstants.TOPIC, "platform.notifications.tocamel");
+        exchange.getIn().setHeader(KafkaConstants.PARTITION, 0);
+        exchange.getIn().setHeader(KafkaConstants.OFFSET, 42L);
+        exchange.getIn().setHeader(KafkaConstants.MANUAL_COMMIT, (KafkaManualCommit) () -> commits.add(42L));
+        new KafkaOffsetWatermark().track(exchange);
+
+        final MockEndpoint mockedDeliveryError = getMockEndpoint("mock:deliveryError");
+        mockedDeliveryError.expectedMessageCount(1);
+
+        this.template.send("direct:handler", exchange);
+        // The exchange of the Kafka record is done with.
+        for (Synchronization synchronization : exchange.adapt(ExtendedExchange.class).handoverCompletions()) {
+            synchronization.onComplete(exchange);
+        }
+
+        MockEndpoint.assertIsSatisfied(5000, TimeUnit.MILLISECONDS, mockedDeliveryError);
+
+        CloudEventTestHelper.assertOutcomeAndSuccessfulAre(
+                mockedDeliveryError.getExchanges().get(0).getIn().getBody(String.class), "Unexpected failure", false);
+
+        // The delivery no longer holds the Kafka record.
+        await().atMost(5, TimeUnit.SECONDS).until(() -> commits.equals(List.of(42L)));
+    }
+}